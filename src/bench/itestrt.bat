@@ -0,0 +1,5 @@
+@echo off
+rem Runs the iTestRT simulator, see ItestrtSimulator. Point an iTest
+rem installation at this directory to use it.
+if "%ITESTRT_SIM_CLASSES%"=="" set ITESTRT_SIM_CLASSES=%~dp0..\..\target\test-classes
+java -cp "%ITESTRT_SIM_CLASSES%" com.spirent.plugins.itest.ItestrtSimulator %*
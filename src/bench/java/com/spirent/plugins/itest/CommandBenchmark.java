@@ -0,0 +1,97 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Resolution of test case entries to URIs and construction of the iTestRT 
+ * command line passing them. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class CommandBenchmark {
+
+	private static final String WORKSPACE = "/var/lib/jenkins/workspace/itest";
+	private static final String BASE = "itestrt --licenseServer 10.0.0.1 "
+			+ "--itar \"/tmp/project.itar\" --testbed \"project://lab/"
+			+ "testbeds/{combination}.tbml\"";
+
+	@Param({ "10", "100", "1000", "10000" })
+	public int testCases;
+
+	private final List<String> entries = new ArrayList<String>();
+	private ParameterSweep.Combination combination;
+
+	@Setup
+	public void createEntries() {
+		for (int i = 0; i < testCases; i++) {
+			switch (i % 3) {
+			case 0:
+				entries.add("project://regression/suite " + i / 100 
+						+ "/case_" + i + ".fftc");
+				break;
+			case 1:
+				entries.add("${WORKSPACE}/regression/case_" + i + ".fftc");
+				break;
+			default:
+				entries.add("  /opt/tests/case_" + i + ".fftc  ");
+			}
+		}
+		combination = ParameterSweep.parse("rate=10|100,size=64")
+				.getCombinations().get(0);
+	}
+
+	@Benchmark
+	public String command() {
+		List<String> uris = new ArrayList<String>(entries.size());
+		for (String entry : entries) {
+			uris.add(ITest.testCaseUri(entry, WORKSPACE));
+		}
+		return ITest.commandFor(BASE, combination, uris, "%20");
+	}
+}
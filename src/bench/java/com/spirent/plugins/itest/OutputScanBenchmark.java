@@ -0,0 +1,105 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Scanning of iTestRT output for execution statuses and failure messages, 
+ * the work done for every line of every iTestRT run. The synthetic log 
+ * repeats a 1 MB block of typical output, one test case per 200 lines. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 2)
+@Measurement(iterations = 5)
+@Fork(1)
+public class OutputScanBenchmark {
+
+	private static final int BLOCK_SIZE = 1024 * 1024;
+
+	@Param({ "10", "100", "1000" })
+	public int megabytes;
+
+	private byte[] block;
+
+	@Setup
+	public void createBlock() throws IOException {
+		StringBuilder log = new StringBuilder(BLOCK_SIZE);
+		int line = 0;
+		while (log.length() < BLOCK_SIZE - 200) {
+			if (++line % 200 == 0) {
+				log.append("Execution status: Pass\n");
+			} else if (line % 50 == 0) {
+				log.append("WARN  [session ").append(line)
+						.append("] response time above threshold\n");
+			} else {
+				log.append("INFO  [step ").append(line).append("] command "
+						+ "sent to port 1/1, waiting for response\n");
+			}
+		}
+		while (log.length() < BLOCK_SIZE) {
+			log.append('\n');
+		}
+		block = log.toString().getBytes("UTF-8");
+	}
+
+	@Benchmark
+	public int scan() throws IOException {
+		TestOutputMonitor monitor = new TestOutputMonitor(new OutputStream() {
+			@Override
+			public void write(int b) {
+			}
+
+			@Override
+			public void write(byte[] b, int off, int len) {
+			}
+		}, "");
+		for (int i = 0; i < megabytes; i++) {
+			monitor.write(block, 0, block.length);
+		}
+		monitor.close();
+		return monitor.getStatuses().size();
+	}
+}
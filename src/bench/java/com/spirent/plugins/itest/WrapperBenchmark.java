@@ -0,0 +1,87 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Generation of the report wrapper page: header and footer read from the 
+ * plugin resources and a tab per report file. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class WrapperBenchmark {
+
+	@Param({ "1", "10", "100", "1000" })
+	public int tabs;
+
+	private final ReportPublisher publisher = new ReportPublisher(null);
+	private String reportFiles;
+
+	@Setup
+	public void createReportFiles() {
+		StringBuilder files = new StringBuilder();
+		for (int i = 0; i < tabs; i++) {
+			files.append("report_").append(i).append(".html, ");
+		}
+		reportFiles = files.toString();
+	}
+
+	@Benchmark
+	public int wrapper() throws IOException {
+		ArrayList<String> lines = publisher.readFile(
+				"/com/spirent/plugins/itest/HtmlPublisher/header.html");
+		lines.addAll(ReportPublisher.tabItems(reportFiles));
+		lines.addAll(publisher.readFile(
+				"/com/spirent/plugins/itest/HtmlPublisher/footer.html"));
+		int length = 0;
+		for (String line : lines) {
+			length += line.length() + 1;
+		}
+		return length;
+	}
+}
@@ -0,0 +1,134 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Build level record of the test cases that completed, written as each 
+ * execution status is reported so that it survives an aborted build or a 
+ * lost agent. A later build can resume from it, running only the test 
+ * cases that did not complete. 
+ * 
+ * One line per completed test case: combination, test case, status and 
+ * duration separated by tabs. Later lines win, so reruns simply append. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class Checkpoint {
+
+	static final String FILE_NAME = "itest-checkpoint.txt";
+	private static final String UTF8 = "UTF-8";
+
+	/**
+	 * Guards the files against parallel Pipeline branches of one run. 
+	 */
+	private static final Object LOCK = new Object();
+
+	private final File file;
+
+	/**
+	 * @param buildDir root directory of the build on the controller 
+	 */
+	Checkpoint(File buildDir) {
+		this.file = new File(buildDir, FILE_NAME);
+	}
+
+	/**
+	 * @return true if the build recorded a checkpoint 
+	 */
+	boolean exists() {
+		return file.isFile();
+	}
+
+	/**
+	 * Append a completed test case. 
+	 * @param result
+	 * @throws IOException
+	 */
+	void record(TestCaseResult result) throws IOException {
+		String line = result.getCombination() + "\t" + result.getTestCase() 
+				+ "\t" + result.getStatus() + "\t" + result.getDuration() 
+				+ "\n";
+		synchronized (LOCK) {
+			OutputStream out = new FileOutputStream(file, true);
+			try {
+				out.write(line.getBytes(UTF8));
+			} finally {
+				out.close();
+			}
+		}
+	}
+
+	/**
+	 * Read the completed test cases. 
+	 * @param buildNumber recorded as the origin of every result 
+	 * @return latest result of each completed test case, in completion order 
+	 * @throws IOException
+	 */
+	List<TestCaseResult> load(int buildNumber) throws IOException {
+		Map<String, TestCaseResult> completed = 
+				new LinkedHashMap<String, TestCaseResult>();
+		if (!file.isFile()) {
+			return new ArrayList<TestCaseResult>();
+		}
+		BufferedReader in = new BufferedReader(
+				new InputStreamReader(new FileInputStream(file), UTF8));
+		try {
+			String line;
+			while ((line = in.readLine()) != null) {
+				String[] fields = line.split("\t");
+				if (fields.length < 4) {
+					continue; //partially written when the build was killed 
+				}
+				long duration;
+				try {
+					duration = Long.parseLong(fields[3]);
+				} catch (NumberFormatException e) {
+					continue;
+				}
+				String key = fields[0] + "\t" + fields[1];
+				completed.remove(key);
+				completed.put(key, new TestCaseResult(fields[1], fields[0], 
+						fields[2], duration, buildNumber));
+			}
+		} finally {
+			in.close();
+		}
+		return new ArrayList<TestCaseResult>(completed.values());
+	}
+}
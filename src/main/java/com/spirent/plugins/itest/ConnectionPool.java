@@ -0,0 +1,407 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import jenkins.util.Timer;
+
+/**
+ * Bounded pool of connections to the test report database, shared by 
+ * everything in the plugin that talks to it. Connections are validated 
+ * before they are handed out, closed after idling too long, and returned 
+ * to the pool when the caller closes them. Connecting and validating give 
+ * up after {@link #CONNECT_TIMEOUT} seconds, so an unreachable database 
+ * cannot hold a caller for the TCP timeout. There is one pool per set of 
+ * connection settings; {@link #configure} replaces it when the global 
+ * settings change. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class ConnectionPool {
+
+	private static final Logger LOGGER = 
+			Logger.getLogger(ConnectionPool.class.getName());
+
+	private static final int MAX_SIZE = 8;
+	private static final long BORROW_TIMEOUT = TimeUnit.SECONDS.toMillis(10);
+	private static final long MAX_IDLE = TimeUnit.MINUTES.toMillis(5);
+	private static final long EVICT_INTERVAL = TimeUnit.MINUTES.toMillis(1);
+	private static final String VALIDATION_QUERY = "SELECT 1";
+	static final int CONNECT_TIMEOUT = 10;
+
+	private static ConnectionPool current;
+
+	private final String url;
+	private final String username;
+	private final String password;
+
+	/**
+	 * Idle connections, most recently returned first. 
+	 */
+	private final LinkedList<Idle> idle = new LinkedList<Idle>();
+	private final ScheduledFuture<?> eviction;
+	private int open;
+	private boolean closed;
+
+	private long created;
+	private long borrowed;
+	private long waits;
+	private long timeouts;
+	private long validationFailures;
+	private long evicted;
+
+	private static final class Idle {
+		final Connection connection;
+		final long since;
+
+		Idle(Connection connection) {
+			this.connection = connection;
+			this.since = System.currentTimeMillis();
+		}
+	}
+
+	private ConnectionPool(String url, String username, String password) {
+		this.url = url;
+		this.username = username;
+		this.password = password;
+		this.eviction = Timer.get().scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				evictIdle();
+			}
+		}, EVICT_INTERVAL, EVICT_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Point the shared pool at a database. The existing pool is kept when 
+	 * the settings are unchanged and closed otherwise. 
+	 * @param url JDBC URL, or null when no database is configured 
+	 * @param username
+	 * @param password
+	 */
+	static synchronized void configure(String url, String username, 
+			String password) {
+		if (current != null && current.matches(url, username, password)) {
+			return;
+		}
+		if (current != null) {
+			current.close();
+			current = null;
+		}
+		if (url != null) {
+			current = new ConnectionPool(url, username, password);
+		}
+	}
+
+	/**
+	 * @return the shared pool, or null if no database is configured 
+	 */
+	static synchronized ConnectionPool get() {
+		return current;
+	}
+
+	/**
+	 * @return true if this pool connects with the given settings 
+	 */
+	boolean matches(String url, String username, String password) {
+		return this.url.equals(url) && eq(this.username, username) 
+				&& eq(this.password, password);
+	}
+
+	private static boolean eq(String a, String b) {
+		return a == null ? b == null : a.equals(b);
+	}
+
+	/**
+	 * Borrow a connection, waiting while the pool is exhausted. Closing the 
+	 * returned connection gives it back to the pool. 
+	 * @return open, validated connection 
+	 * @throws SQLException if no connection can be opened in time 
+	 */
+	Connection borrow() throws SQLException {
+		long deadline = System.currentTimeMillis() + BORROW_TIMEOUT;
+		while (true) {
+			Connection connection = null;
+			synchronized (this) {
+				if (closed) {
+					throw new SQLException("Connection pool closed");
+				}
+				if (!idle.isEmpty()) {
+					connection = idle.removeFirst().connection;
+				} else if (open < MAX_SIZE) {
+					open++;
+				} else {
+					long wait = deadline - System.currentTimeMillis();
+					if (wait <= 0) {
+						timeouts++;
+						throw new SQLException("No database connection "
+								+ "available within " + BORROW_TIMEOUT / 1000 
+								+ " s, " + open + " in use");
+					}
+					waits++;
+					try {
+						wait(wait);
+					} catch (InterruptedException e) {
+						Thread.currentThread().interrupt();
+						throw new SQLException("Interrupted waiting for a "
+								+ "database connection");
+					}
+					continue;
+				}
+			}
+			//slot reserved, connect and validate outside the lock 
+			if (connection == null) {
+				try {
+					connection = DriverManager.getConnection(url, 
+							connectionProperties(url, username, password));
+				} catch (SQLException e) {
+					release();
+					throw e;
+				}
+				synchronized (this) {
+					created++;
+				}
+			} else if (!isValid(connection)) {
+				synchronized (this) {
+					validationFailures++;
+				}
+				discard(connection);
+				continue;
+			}
+			synchronized (this) {
+				borrowed++;
+			}
+			return wrap(connection);
+		}
+	}
+
+	/**
+	 * @return credentials and the connect timeout of the driver the URL 
+	 * selects, the drivers do not share a property name and unit for it 
+	 */
+	static Properties connectionProperties(String url, String username, 
+			String password) {
+		Properties info = new Properties();
+		if (username != null) {
+			info.setProperty("user", username);
+		}
+		if (password != null) {
+			info.setProperty("password", password);
+		}
+		if (url.startsWith("jdbc:mysql:")) {
+			info.setProperty("connectTimeout", 
+					String.valueOf(TimeUnit.SECONDS.toMillis(CONNECT_TIMEOUT)));
+		} else if (url.startsWith("jdbc:postgresql:")) {
+			info.setProperty("loginTimeout", String.valueOf(CONNECT_TIMEOUT));
+			info.setProperty("connectTimeout", String.valueOf(CONNECT_TIMEOUT));
+		}
+		return info;
+	}
+
+	/**
+	 * @return true if the connection still answers a query 
+	 */
+	static boolean isValid(Connection connection) {
+		try {
+			Statement statement = connection.createStatement();
+			try {
+				statement.setQueryTimeout(CONNECT_TIMEOUT);
+				statement.execute(VALIDATION_QUERY);
+			} finally {
+				statement.close();
+			}
+			return true;
+		} catch (SQLException e) {
+			return false;
+		}
+	}
+
+	/**
+	 * Give a connection back. Connections returned mid-transaction or to a 
+	 * closed pool are closed instead. 
+	 */
+	private void giveBack(Connection connection) {
+		try {
+			if (!connection.getAutoCommit()) {
+				connection.rollback();
+				connection.setAutoCommit(true);
+			}
+		} catch (SQLException e) {
+			discard(connection);
+			return;
+		}
+		synchronized (this) {
+			if (!closed) {
+				idle.addFirst(new Idle(connection));
+				notifyAll();
+				return;
+			}
+		}
+		discard(connection);
+	}
+
+	private void discard(Connection connection) {
+		try {
+			connection.close();
+		} catch (SQLException e) {
+			LOGGER.log(Level.FINE, "Cannot close database connection", e);
+		}
+		release();
+	}
+
+	private synchronized void release() {
+		open--;
+		notifyAll();
+	}
+
+	/**
+	 * Close connections idle longer than allowed. 
+	 */
+	private void evictIdle() {
+		List<Connection> stale = new ArrayList<Connection>();
+		synchronized (this) {
+			long cutoff = System.currentTimeMillis() - MAX_IDLE;
+			for (Iterator<Idle> i = idle.iterator(); i.hasNext();) {
+				Idle entry = i.next();
+				if (entry.since < cutoff) {
+					i.remove();
+					stale.add(entry.connection);
+					evicted++;
+				}
+			}
+		}
+		for (Connection connection : stale) {
+			discard(connection);
+		}
+	}
+
+	/**
+	 * Close idle connections now and borrowed ones when they are returned. 
+	 */
+	void close() {
+		eviction.cancel(false);
+		List<Connection> stale = new ArrayList<Connection>();
+		synchronized (this) {
+			closed = true;
+			for (Idle entry : idle) {
+				stale.add(entry.connection);
+			}
+			idle.clear();
+			notifyAll();
+		}
+		for (Connection connection : stale) {
+			discard(connection);
+		}
+	}
+
+	/**
+	 * @return connections open, idle or borrowed 
+	 */
+	synchronized int getOpen() {
+		return open;
+	}
+
+	/**
+	 * @return connections currently borrowed 
+	 */
+	synchronized int getActive() {
+		return open - idle.size();
+	}
+
+	/**
+	 * @return connections waiting in the pool 
+	 */
+	synchronized int getIdle() {
+		return idle.size();
+	}
+
+	/**
+	 * @return one line summary of the pool counters 
+	 */
+	synchronized String getStatistics() {
+		return String.format("open=%d active=%d idle=%d created=%d "
+				+ "borrowed=%d waits=%d timeouts=%d invalid=%d evicted=%d", 
+				open, open - idle.size(), idle.size(), created, borrowed, 
+				waits, timeouts, validationFailures, evicted);
+	}
+
+	/**
+	 * Wrap a connection so that close() returns it to the pool. The wrapper 
+	 * refuses use after close. 
+	 */
+	private Connection wrap(final Connection connection) {
+		return (Connection) Proxy.newProxyInstance(
+				ConnectionPool.class.getClassLoader(), 
+				new Class<?>[] { Connection.class }, new InvocationHandler() {
+					private boolean returned;
+
+					public Object invoke(Object proxy, Method method, 
+							Object[] args) throws Throwable {
+						String name = method.getName();
+						if (method.getDeclaringClass() == Object.class) {
+							return method.invoke(connection, args);
+						}
+						synchronized (this) {
+							if (name.equals("close")) {
+								if (!returned) {
+									returned = true;
+									giveBack(connection);
+								}
+								return null;
+							}
+							if (name.equals("isClosed") && returned) {
+								return Boolean.TRUE;
+							}
+							if (returned) {
+								throw new SQLException("Connection closed");
+							}
+						}
+						try {
+							return method.invoke(connection, args);
+						} catch (InvocationTargetException e) {
+							throw e.getCause();
+						}
+					}
+				});
+	}
+}
@@ -0,0 +1,202 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.Proc;
+import hudson.model.Computer;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.ComputerListener;
+
+/**
+ * Resolved itestrt executables and their versions, cached per node and 
+ * installation home, as translated for the node and expanded with the 
+ * build environment, so builds do not probe the agent file system each 
+ * time. 
+ * Entries of a node are dropped when it comes online again, and all 
+ * entries when the installations are reconfigured. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public final class ExecutableCache {
+
+	private static final long VERSION_TIMEOUT = 30;
+	private static final String[] CANDIDATES = { "itestrt", "bin/itestrt" };
+
+	private static final Map<String, Executable> CACHE = 
+			new ConcurrentHashMap<String, Executable>();
+
+	/**
+	 * The itestrt of an installation on one node. 
+	 */
+	static final class Executable {
+		final String path;
+		final String version;
+
+		Executable(String path, String version) {
+			this.path = path;
+			this.version = version;
+		}
+
+		/**
+		 * @return the path, quoted when it contains spaces 
+		 */
+		String getCommand() {
+			return path.contains(" ") ? String.format("\"%s\"", path) : path;
+		}
+	}
+
+	private ExecutableCache() {
+	}
+
+	/**
+	 * Resolve the itestrt of a named installation on the node of a 
+	 * workspace. 
+	 * @param installation
+	 * @param workspace
+	 * @param launcher
+	 * @param env build environment
+	 * @param listener
+	 * @return the executable, or null if it does not exist on the node 
+	 * @throws IOException
+	 * @throws InterruptedException
+	 */
+	static Executable resolve(ITestInstallation installation, 
+			FilePath workspace, Launcher launcher, EnvVars env, 
+			TaskListener listener) throws IOException, InterruptedException {
+		Computer computer = workspace.toComputer();
+		Node node = computer == null ? null : computer.getNode();
+		String nodeName = computer == null ? "" : computer.getName();
+		//translating and expanding only reads the configuration 
+		ITestInstallation local = installation;
+		if (node != null) {
+			local = local.forNode(node, listener);
+		}
+		local = local.forEnvironment(env);
+		String home = local.getHome();
+		if (home == null || home.trim().isEmpty()) {
+			return null;
+		}
+		String key = nodeName + "\t" + installation.getName() + "\t" 
+				+ home.trim();
+		Executable cached = CACHE.get(key);
+		if (cached != null) {
+			return cached;
+		}
+
+		FilePath executable = find(new FilePath(workspace.getChannel(), 
+				home.trim()), launcher.isUnix());
+		if (executable == null) {
+			return null;
+		}
+		Executable resolved = new Executable(executable.getRemote(), 
+				probeVersion(executable.getRemote(), launcher, listener));
+		CACHE.put(key, resolved);
+		return resolved;
+	}
+
+	/**
+	 * @return the home itself if it is a file, else the first itestrt 
+	 * found below it 
+	 */
+	private static FilePath find(FilePath home, boolean unix) 
+			throws IOException, InterruptedException {
+		if (home.exists() && !home.isDirectory()) {
+			return home;
+		}
+		for (String candidate : CANDIDATES) {
+			FilePath file = home.child(unix ? candidate : candidate + ".exe");
+			if (file.exists()) {
+				return file;
+			}
+		}
+		return null;
+	}
+
+	/**
+	 * @return first line itestrt prints for --version, or "unknown" 
+	 */
+	private static String probeVersion(String path, Launcher launcher, 
+			TaskListener listener) throws InterruptedException {
+		ByteArrayOutputStream out = new ByteArrayOutputStream();
+		try {
+			Proc proc = launcher.launch().cmds(path, "--version").stdout(out)
+					.quiet(true).start();
+			proc.joinWithTimeout(VERSION_TIMEOUT, TimeUnit.SECONDS, listener);
+		} catch (IOException e) {
+			return "unknown";
+		}
+		String version = out.toString().trim();
+		int eol = version.indexOf('\n');
+		if (eol >= 0) {
+			version = version.substring(0, eol).trim();
+		}
+		return version.isEmpty() ? "unknown" : version;
+	}
+
+	/**
+	 * Forget every resolved executable. 
+	 */
+	static void clear() {
+		CACHE.clear();
+	}
+
+	/**
+	 * Forget the executables resolved on a node. 
+	 * @param nodeName
+	 */
+	static void clear(String nodeName) {
+		for (Iterator<String> i = CACHE.keySet().iterator(); i.hasNext();) {
+			if (i.next().startsWith(nodeName + "\t")) {
+				i.remove();
+			}
+		}
+	}
+
+	/**
+	 * Drops the entries of an agent when it reconnects, as its iTest 
+	 * installation may have changed while it was offline. 
+	 */
+	@Extension
+	public static final class Invalidator extends ComputerListener {
+		@Override
+		public void onOnline(Computer computer, TaskListener listener) {
+			clear(computer.getName());
+		}
+	}
+}
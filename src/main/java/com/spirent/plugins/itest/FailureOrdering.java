@@ -0,0 +1,180 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import hudson.model.Run;
+
+/**
+ * Orders test cases so those most likely to fail run first. The failure 
+ * probability of a test case is its failure rate over the previous builds 
+ * of the job, each build counting less than the one after it, so recent 
+ * failures weigh most. A flaky result counts as half a failure. Test cases 
+ * without history come right after every test case that failed or was 
+ * flaky in the history, and before those that always passed. Among equally 
+ * likely failures, the shorter test case runs first. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class FailureOrdering {
+
+	private static final int HISTORY_BUILDS = 20;
+
+	/**
+	 * Weight of a build relative to the build after it. 
+	 */
+	private static final double DECAY = 0.7;
+
+	private static final int LOGGED = 5;
+
+	/**
+	 * Weighted failures, weighted runs and last duration by test case. 
+	 */
+	private final Map<String, double[]> history = 
+			new HashMap<String, double[]>();
+
+	private FailureOrdering() {
+	}
+
+	/**
+	 * Read the results of the previous builds of a run. 
+	 * @param run
+	 * @return the ordering 
+	 */
+	static FailureOrdering of(Run<?, ?> run) {
+		FailureOrdering ordering = new FailureOrdering();
+		Run<?, ?> previous = run.getPreviousBuild();
+		double weight = 1;
+		for (int i = 0; previous != null && i < HISTORY_BUILDS; i++) {
+			ITestResultAction action = previous.getAction(ITestResultAction.class);
+			if (action != null) {
+				ordering.add(action.getResults(), weight);
+				weight *= DECAY;
+			}
+			previous = previous.getPreviousBuild();
+		}
+		return ordering;
+	}
+
+	private void add(List<TestCaseResult> results, double weight) {
+		//a test case of a sweep fails a build if any combination failed 
+		Map<String, Double> failed = new HashMap<String, Double>();
+		for (TestCaseResult result : results) {
+			if (result.isCached() || result.getStatus().equals(
+					TestCaseResult.STATUS_NOT_RUN)) {
+				continue;
+			}
+			double failure = result.isFlaky() ? 0.5 
+					: result.isPassed() ? 0 : 1;
+			Double before = failed.get(result.getTestCase());
+			failed.put(result.getTestCase(), 
+					before == null ? failure : Math.max(before, failure));
+			if (!history.containsKey(result.getTestCase())) {
+				history.put(result.getTestCase(), 
+						new double[] { 0, 0, result.getDuration() });
+			}
+		}
+		for (Map.Entry<String, Double> e : failed.entrySet()) {
+			double[] entry = history.get(e.getKey());
+			entry[0] += weight * e.getValue();
+			entry[1] += weight;
+		}
+	}
+
+	/**
+	 * @param test test case URI 
+	 * @return estimated probability the test case fails, -1 if it has no 
+	 * history 
+	 */
+	double probability(String test) {
+		double[] entry = history.get(test);
+		return entry == null || entry[1] == 0 ? -1 : entry[0] / entry[1];
+	}
+
+	/**
+	 * @param test test case URI 
+	 * @return 0 if the test case failed in the history, 1 if it has no 
+	 * history, 2 if it always passed 
+	 */
+	private int rank(String test) {
+		double probability = probability(test);
+		return probability > 0 ? 0 : probability < 0 ? 1 : 2;
+	}
+
+	/**
+	 * @param tests test case URIs 
+	 * @return the test cases, most likely failures first, otherwise in the 
+	 * given order 
+	 */
+	List<String> order(List<String> tests) {
+		List<String> ordered = new ArrayList<String>(tests);
+		Collections.sort(ordered, new Comparator<String>() {
+			public int compare(String a, String b) {
+				int byRank = rank(a) - rank(b);
+				if (byRank != 0) {
+					return byRank;
+				}
+				int byProbability = Double.compare(probability(b), 
+						probability(a));
+				return byProbability != 0 ? byProbability 
+						: Double.compare(duration(a), duration(b));
+			}
+		});
+		return ordered;
+	}
+
+	private double duration(String test) {
+		double[] entry = history.get(test);
+		return entry == null ? 0 : entry[2];
+	}
+
+	/**
+	 * Print the test cases that run first. 
+	 * @param ordered
+	 * @param logger
+	 */
+	void print(List<String> ordered, PrintStream logger) {
+		logger.println("Running test cases most likely to fail first:");
+		for (int i = 0; i < Math.min(LOGGED, ordered.size()); i++) {
+			String test = ordered.get(i);
+			double probability = probability(test);
+			logger.println(probability < 0 ? "   new " + test 
+					: String.format("  %3.0f%% %s", probability * 100, test));
+		}
+		if (ordered.size() > LOGGED) {
+			logger.println(String.format("  and %d more", 
+					ordered.size() - LOGGED));
+		}
+	}
+}
@@ -0,0 +1,216 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+
+import hudson.Util;
+import jenkins.model.Jenkins;
+
+/**
+ * Immutable snapshot of the global iTest settings. The descriptor replaces 
+ * its snapshot as a whole whenever the settings change, so builds read a 
+ * consistent configuration from memory without locking. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class GlobalConfig {
+
+	static final GlobalConfig EMPTY = new GlobalConfig("", "", "", "", "", 
+			"", "", "", "", "", 0, false);
+
+	private final String rtPath;
+	private final String lsIPAddress;
+	private final String lsPort;
+	private final String dbName;
+	private final String dbType;
+	private final String dbUsername;
+	private final String dbPassword;
+	private final String dbURI;
+	private final String dbIPAddress;
+	private final String dbPort;
+	private final int itarCacheSize;
+	private final boolean uploadResults;
+
+	GlobalConfig(String rtPath, String lsIPAddress, String lsPort, 
+			String dbName, String dbType, String dbUsername, String dbPassword, 
+			String dbURI, String dbIPAddress, String dbPort, int itarCacheSize, 
+			boolean uploadResults) {
+		this.rtPath = Util.fixNull(rtPath).trim();
+		this.lsIPAddress = Util.fixNull(lsIPAddress);
+		this.lsPort = Util.fixNull(lsPort);
+		this.dbName = Util.fixNull(dbName);
+		this.dbType = Util.fixNull(dbType);
+		this.dbUsername = Util.fixNull(dbUsername);
+		this.dbPassword = Util.fixNull(dbPassword);
+		this.dbURI = Util.fixNull(dbURI);
+		this.dbIPAddress = Util.fixNull(dbIPAddress);
+		this.dbPort = Util.fixNull(dbPort);
+		this.itarCacheSize = itarCacheSize;
+		this.uploadResults = uploadResults;
+	}
+
+	/**
+	 * @return current settings of the registered descriptor 
+	 */
+	static GlobalConfig get() {
+		Jenkins jenkins = Jenkins.getInstance();
+		ITest.Descriptor descriptor = jenkins == null ? null 
+				: jenkins.getDescriptorByType(ITest.Descriptor.class);
+		return descriptor == null ? EMPTY : descriptor.getConfig();
+	}
+
+	String getRtPath() {
+		return rtPath;
+	}
+
+	String getLsIPAddress() {
+		return lsIPAddress;
+	}
+
+	String getLsPort() {
+		return lsPort;
+	}
+
+	/**
+	 * @return license server host with the port if one is set 
+	 */
+	String getLicenseServer() {
+		return lsPort.isEmpty() ? lsIPAddress : lsIPAddress + ":" + lsPort;
+	}
+
+	String getDbName() {
+		return dbName;
+	}
+
+	String getDbType() {
+		return dbType;
+	}
+
+	String getDbUsername() {
+		return dbUsername;
+	}
+
+	String getDbPassword() {
+		return dbPassword;
+	}
+
+	String getDbURI() {
+		return dbURI;
+	}
+
+	String getDbIPAddress() {
+		return dbIPAddress;
+	}
+
+	String getDbPort() {
+		return dbPort;
+	}
+
+	/**
+	 * @return iTAR cache limit per agent in MB 
+	 */
+	int getItarCacheSize() {
+		return itarCacheSize;
+	}
+
+	boolean isUploadResults() {
+		return uploadResults;
+	}
+
+	/**
+	 * @return true if enough of the test report database is configured 
+	 * to connect to it 
+	 */
+	boolean isDatabaseConfigured() {
+		return !dbUsername.isEmpty() 
+				&& (!dbURI.isEmpty() || !dbIPAddress.isEmpty());
+	}
+
+	/**
+	 * @return JDBC URL of the test report database 
+	 */
+	String getJdbcUrl() {
+		return ITest.Descriptor.jdbcUrl(dbType, dbURI, dbIPAddress, dbPort, 
+				dbName);
+	}
+
+	/**
+	 * Point the shared connection pool at this database. The pool is only 
+	 * rebuilt when the settings changed. 
+	 */
+	void configurePool() {
+		if (isDatabaseConfigured()) {
+			ConnectionPool.configure(getJdbcUrl(), dbUsername, dbPassword);
+		} else {
+			ConnectionPool.configure(null, null, null);
+		}
+	}
+
+	/**
+	 * Borrow a connection to the test report database from the shared pool. 
+	 * @return connection, to be closed by the caller 
+	 * @throws SQLException if the database cannot be reached 
+	 */
+	Connection openConnection() throws SQLException {
+		loadDriver();
+		configurePool();
+		ConnectionPool pool = ConnectionPool.get();
+		if (pool == null) {
+			throw new SQLException("Test report database not configured");
+		}
+		return pool.borrow();
+	}
+
+	/**
+	 * Open a connection to the test report database outside of the shared 
+	 * pool, e.g. to check the database is up without taking a pooled 
+	 * connection away from builds. 
+	 * @return connection, to be closed by the caller 
+	 * @throws SQLException if the database cannot be reached 
+	 */
+	Connection openUnpooledConnection() throws SQLException {
+		loadDriver();
+		String url = getJdbcUrl();
+		return DriverManager.getConnection(url, 
+				ConnectionPool.connectionProperties(url, dbUsername, dbPassword));
+	}
+
+	private void loadDriver() throws SQLException {
+		if (!isDatabaseConfigured()) {
+			throw new SQLException("Test report database not configured");
+		}
+		try {
+			ITest.Descriptor.loadDriver(dbURI.isEmpty() 
+					? dbType : ITest.Descriptor.parseType(dbURI));
+		} catch (ClassNotFoundException e) {
+			throw new SQLException("No JDBC driver: " + e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import hudson.Util;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import jenkins.util.Timer;
+
+/**
+ * Periodically checks that the license server and the test report database 
+ * are reachable, off the request and build threads, and keeps the latest 
+ * status of each. Builds consult the cached status before starting iTestRT. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public final class HealthProber {
+
+	private static final Logger LOGGER = 
+			Logger.getLogger(HealthProber.class.getName());
+
+	static final String LICENSE_SERVER = "License server";
+	static final String DATABASE = "Test report database";
+	static final long INTERVAL = TimeUnit.SECONDS.toMillis(30);
+	private static final int CONNECT_TIMEOUT = 2000;
+	private static final int DEFAULT_LICENSE_PORT = 27000;
+
+	private static final HealthProber INSTANCE = new HealthProber();
+
+	/**
+	 * Latest status by dependency, replaced as a whole after each probe. 
+	 */
+	private volatile Map<String, Status> statuses = Collections.emptyMap();
+
+	/**
+	 * Outcome of one probe of a dependency. 
+	 */
+	public static final class Status {
+		private final String name;
+		private final String target;
+		private final boolean up;
+		private final long latency;
+		private final long checked;
+		private final String message;
+
+		Status(String name, String target, boolean up, long latency, 
+				String message) {
+			this.name = name;
+			this.target = target;
+			this.up = up;
+			this.latency = latency;
+			this.checked = System.currentTimeMillis();
+			this.message = message;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getTarget() {
+			return target;
+		}
+
+		public boolean isUp() {
+			return up;
+		}
+
+		/**
+		 * @return milliseconds the probe took 
+		 */
+		public long getLatency() {
+			return latency;
+		}
+
+		/**
+		 * @return time of the probe in milliseconds since the epoch 
+		 */
+		public long getChecked() {
+			return checked;
+		}
+
+		public String getMessage() {
+			return message;
+		}
+
+		/**
+		 * @return true if the status is recent enough to act on 
+		 */
+		boolean isFresh() {
+			return System.currentTimeMillis() - checked < 2 * INTERVAL;
+		}
+
+		@Override
+		public String toString() {
+			return String.format("%s %s is %s (%s, %d ms)", name, target, 
+					up ? "up" : "down", message, latency);
+		}
+	}
+
+	private HealthProber() {
+	}
+
+	static HealthProber get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Start probing once the global configuration is loaded. 
+	 */
+	@Initializer(after = InitMilestone.JOB_LOADED)
+	public static void start() {
+		Timer.get().scheduleAtFixedRate(new Runnable() {
+			public void run() {
+				INSTANCE.probe();
+			}
+		}, 0, INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Probe again soon, e.g. after the configuration changed. 
+	 */
+	void refresh() {
+		Timer.get().schedule(new Runnable() {
+			public void run() {
+				probe();
+			}
+		}, 0, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return latest status of the configured dependencies 
+	 */
+	List<Status> getStatuses() {
+		return new ArrayList<Status>(statuses.values());
+	}
+
+	/**
+	 * @param name {@link #LICENSE_SERVER} or {@link #DATABASE} 
+	 * @return latest status, or null if not configured or not probed yet 
+	 */
+	Status getStatus(String name) {
+		return statuses.get(name);
+	}
+
+	/**
+	 * Dependencies a build needs that are known to be down. Dependencies 
+	 * without a recent status are assumed to be up. 
+	 * @param database true if the build writes to the test report database 
+	 * @return statuses of the dependencies that are down 
+	 */
+	List<Status> getDown(boolean database) {
+		List<Status> down = new ArrayList<Status>();
+		for (Status status : statuses.values()) {
+			if (!status.isUp() && status.isFresh() 
+					&& (database || !DATABASE.equals(status.getName()))) {
+				down.add(status);
+			}
+		}
+		return down;
+	}
+
+	private synchronized void probe() {
+		GlobalConfig global = GlobalConfig.get();
+		Map<String, Status> probed = new LinkedHashMap<String, Status>();
+		if (!global.getLsIPAddress().isEmpty()) {
+			probed.put(LICENSE_SERVER, probeLicenseServer(
+					global.getLsIPAddress(), global.getLsPort()));
+		}
+		if (global.isDatabaseConfigured()) {
+			probed.put(DATABASE, probeDatabase(global));
+		}
+		for (Status status : probed.values()) {
+			Status previous = statuses.get(status.getName());
+			if (!status.isUp() && (previous == null || previous.isUp())) {
+				LOGGER.warning(status.toString());
+			} else if (status.isUp() && previous != null && !previous.isUp()) {
+				LOGGER.info(status.toString());
+			}
+		}
+		statuses = Collections.unmodifiableMap(probed);
+	}
+
+	/**
+	 * Open and close a TCP connection to a license server. 
+	 * @param host name or IP address 
+	 * @param port port number, default port if empty 
+	 * @return status of the license server 
+	 */
+	static Status probeLicenseServer(String host, String port) {
+		long start = System.currentTimeMillis();
+		String target = host;
+		try {
+			int portNumber = Util.fixNull(port).trim().isEmpty() 
+					? DEFAULT_LICENSE_PORT : Integer.parseInt(port.trim());
+			target = host + ":" + portNumber;
+			Socket socket = new Socket();
+			try {
+				//InetSocketAddress resolves host name to IP if necessary
+				socket.connect(new InetSocketAddress(host, portNumber), 
+						CONNECT_TIMEOUT);
+			} finally {
+				socket.close();
+			}
+			return new Status(LICENSE_SERVER, target, true, 
+					System.currentTimeMillis() - start, "connected");
+		} catch (NumberFormatException e) {
+			return new Status(LICENSE_SERVER, target, false, 0, 
+					"invalid port " + port);
+		} catch (IOException e) {
+			return new Status(LICENSE_SERVER, target, false, 
+					System.currentTimeMillis() - start, String.valueOf(e));
+		}
+	}
+
+	/**
+	 * Open and close a connection of its own, so a probe neither waits for 
+	 * nor holds a connection of the shared pool. 
+	 */
+	private static Status probeDatabase(GlobalConfig global) {
+		long start = System.currentTimeMillis();
+		//URL parameters may carry credentials 
+		String target = global.getJdbcUrl().replaceFirst("[?;].*", "");
+		try {
+			Connection connection = global.openUnpooledConnection();
+			connection.close();
+			return new Status(DATABASE, target, true, 
+					System.currentTimeMillis() - start, "connected");
+		} catch (SQLException e) {
+			return new Status(DATABASE, target, false, 
+					System.currentTimeMillis() - start, e.getMessage());
+		}
+	}
+}
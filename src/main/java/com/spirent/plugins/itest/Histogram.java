@@ -0,0 +1,89 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Fixed bucket histogram of durations, updated without locks or 
+ * allocation. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class Histogram {
+
+	/**
+	 * Upper bounds of the buckets in seconds, the last bucket is unbounded. 
+	 */
+	static final double[] BOUNDS = { 0.01, 0.05, 0.1, 0.5, 1, 5, 10, 30, 60, 
+		300, 900, 1800, 3600, 7200 };
+
+	private final AtomicLongArray buckets = 
+			new AtomicLongArray(BOUNDS.length + 1);
+	private final AtomicLong count = new AtomicLong();
+	private final AtomicLong sumNanos = new AtomicLong();
+
+	/**
+	 * @param nanos duration to add 
+	 */
+	void observe(long nanos) {
+		double seconds = nanos / 1e9;
+		int i = 0;
+		while (i < BOUNDS.length && seconds > BOUNDS[i]) {
+			i++;
+		}
+		buckets.incrementAndGet(i);
+		count.incrementAndGet();
+		sumNanos.addAndGet(nanos);
+	}
+
+	long getCount() {
+		return count.get();
+	}
+
+	/**
+	 * @return sum of the observed durations in seconds 
+	 */
+	double getSum() {
+		return sumNanos.get() / 1e9;
+	}
+
+	/**
+	 * @return number of observations up to each bound, the last element 
+	 * counting all 
+	 */
+	long[] getCumulative() {
+		long[] cumulative = new long[BOUNDS.length + 1];
+		long total = 0;
+		for (int i = 0; i < cumulative.length; i++) {
+			total += buckets.get(i);
+			cumulative[i] = total;
+		}
+		return cumulative;
+	}
+}
@@ -24,42 +24,58 @@
 
 package com.spirent.plugins.itest;
 
-import java.io.File;
-import java.io.FileNotFoundException;
 import java.io.IOException;
-import java.net.InetSocketAddress;
-import java.net.Socket;
+import java.nio.charset.Charset;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.Map.Entry;
-import java.util.Scanner;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import javax.servlet.ServletException;
 
 import org.kohsuke.stapler.DataBoundConstructor;
+import org.kohsuke.stapler.DataBoundSetter;
 import org.kohsuke.stapler.QueryParameter;
 import org.kohsuke.stapler.StaplerRequest;
 
+import hudson.AbortException;
+import hudson.EnvVars;
 import hudson.Extension;
 import hudson.FilePath;
 import hudson.Launcher;
-import hudson.model.AbstractBuild;
+import hudson.Proc;
+import hudson.Util;
 import hudson.model.AbstractProject;
 import hudson.model.BuildListener;
-import hudson.tasks.BatchFile;
+import hudson.model.Computer;
+import hudson.model.Executor;
+import hudson.model.Node;
+import hudson.model.Run;
+import hudson.model.StreamBuildListener;
+import hudson.model.TaskListener;
 import hudson.tasks.BuildStepDescriptor;
 import hudson.tasks.Builder;
-import hudson.tasks.CommandInterpreter;
-import hudson.tasks.Shell;
 import hudson.util.FormValidation;
 import hudson.util.ListBoxModel;
 import hudson.util.ListBoxModel.Option;
+import jenkins.model.Jenkins;
+import jenkins.tasks.SimpleBuildStep;
 import net.sf.json.JSONObject;
 
 /**
@@ -68,7 +84,7 @@ import net.sf.json.JSONObject;
  * @author Spirent 
  * @since 1.0
  */
-public class ITest extends CommandInterpreter { 
+public class ITest extends Builder implements SimpleBuildStep { 
 
 	/**
 	 * @since 1.0
@@ -98,442 +114,2435 @@ public class ITest extends CommandInterpreter {
 	 * @since 1.0
 	 */
 	public final String dbCustomTag; 
+	/**
+	 * Maximum number of parameter sweep combinations run concurrently. 
+	 * @since 1.1.2
+	 */
+	private int sweepParallelism = DEFAULT_SWEEP_PARALLELISM; 
+	/**
+	 * Patterns of discovered test cases to leave out. 
+	 * @since 1.1.2
+	 */
+	private String testcaseExcludes = ""; 
+	/**
+	 * If set, only discovered test cases declaring one of these tags run. 
+	 * @since 1.1.2
+	 */
+	private String testcaseTags = ""; 
+	/**
+	 * Only run test cases whose inputs changed since they last passed. 
+	 * @since 1.1.2
+	 */
+	private boolean skipUnchanged; 
+	/**
+	 * Run from a cached iTAR export of the iTest workspace. 
+	 * @since 1.1.2
+	 */
+	private boolean cacheItar; 
+	/**
+	 * Number of times test cases that did not pass are run again. 
+	 * @since 1.1.2
+	 */
+	private int retryCount; 
+	/**
+	 * Rerun each failed test case as its own concurrent iTestRT run. 
+	 * @since 1.1.2
+	 */
+	private boolean retryInParallel; 
+	/**
+	 * Minutes a single test case may run before iTestRT is stopped. 
+	 * @since 1.1.2
+	 */
+	private int testTimeout; 
+	/**
+	 * Minutes all test cases of the step may run. 
+	 * @since 1.1.2
+	 */
+	private int suiteTimeout; 
+	/**
+	 * Number of an interrupted build whose completed test cases are reused. 
+	 * May reference build parameters. 
+	 * @since 1.1.2
+	 */
+	private String resumeFrom = ""; 
+	/**
+	 * What to do when the license server or test report database is known 
+	 * to be down: ignore, fail or wait. 
+	 * @since 1.1.2
+	 */
+	private String healthCheck = HEALTH_IGNORE; 
+	/**
+	 * Name of the iTest installation to run, empty for the global iTestRT 
+	 * path. 
+	 * @since 1.1.2
+	 */
+	private String installation = ""; 
+	/**
+	 * Write the full iTestRT output of each test case to a compressed log 
+	 * instead of the build log. 
+	 * @since 1.1.2
+	 */
+	private boolean sideLogs; 
+	/**
+	 * Seconds between samples of the iTestRT processes, 0 to not sample. 
+	 * @since 1.1.2
+	 */
+	private int resourceInterval; 
+	/**
+	 * Resident memory in MB the iTestRT processes may use, 0 for no limit. 
+	 * @since 1.1.2
+	 */
+	private int memoryLimit; 
+	/**
+	 * Order to run test cases in: listed or failuresFirst. 
+	 * @since 1.1.2
+	 */
+	private String testOrder = ORDER_LISTED; 
+	/**
+	 * Dependencies between test cases, one {@link TestDependencies} rule 
+	 * per line. 
+	 * @since 1.1.2
+	 */
+	private String dependencies = ""; 
+	/**
+	 * Maximum number of test cases with dependencies run concurrently, 0 to 
+	 * use {@link #getSweepParallelism()}. 
+	 * @since 1.1.2
+	 */
+	private int dependencyParallelism; 
 
 	private final static boolean BUILD_FAILURE = false; 
     private final static boolean BUILD_SUCCESS = true;
     private static final String URI_PROJECT = "project://";
     private static final String URI_FILE = "file:/";
     private static final String VAR_WORKSPACE = "${WORKSPACE}";
-
-	private transient String safeTestbed = ""; 
-	private transient String safeParamFile = ""; 
-
-	private transient String iTestCommand = ""; 
-	private transient String itestrt = ""; 
-	private transient ArrayList<String> testCaseNames; 
+    private static final String TOKEN_COMBINATION = "{combination}";
+    private static final int DEFAULT_SWEEP_PARALLELISM = 4;
+    private static final String ITAR_CACHE = "itest-itar-cache";
+    static final String HEALTH_IGNORE = "ignore";
+    static final String HEALTH_FAIL = "fail";
+    static final String HEALTH_WAIT = "wait";
+    static final String ORDER_LISTED = "listed";
+    static final String ORDER_FAILURES_FIRST = "failuresFirst";
+    /**
+     * Environment variable marking every process started by a step. 
+     */
+    static final String VAR_MARKER = "ITEST_PROCESS_MARKER";
+    private static final long TEARDOWN_TIMEOUT = 30;
+    private static final long DEFAULT_HEALTH_WAIT = TimeUnit.MINUTES.toMillis(30);
 
     private final String PARAM_TESTBED = "--testbed";
     private final String PARAM_PARAMETER = "--paramfile";
     private final String PARAM_ITAR = " --itar";
     private final String PARAM_EXPORTITAR = "--exportItar";
     private final String PARAM_LICENSE_SERVER = "--licenseServer";
-    private final String PARAM_TEST = "--test";
+    private static final String PARAM_TEST = "--test";
 
-    private final String PATTERN_EXECUTION = "Execution status:\\s+(\\w+)";
-    private String SPACE_CHARACTER = "%%20";
+    static final String PATTERN_EXECUTION = "Execution status:\\s+(\\w+)";
 
 
 	@DataBoundConstructor
     public ITest(String workspace, String testcases, String testbed, String params, String paramFile,
 			boolean testReportRequired, String dbCustomTag) {
-		super(null);
-        this.workspace = workspace.trim();
-        this.testcases = testcases.trim();
-        this.testbed = testbed.trim();
-		this.params = params;
-        this.paramFile = paramFile.trim();
+        this.workspace = Util.fixNull(workspace).trim();
+        this.testcases = Util.fixNull(testcases).trim();
+        this.testbed = Util.fixNull(testbed).trim();
+		this.params = Util.fixNull(params);
+        this.paramFile = Util.fixNull(paramFile).trim();
 		this.testReportRequired = testReportRequired;
-		this.dbCustomTag = dbCustomTag;
+		this.dbCustomTag = Util.fixNull(dbCustomTag);
+	}
+
+	/**
+	 * @return maximum number of parameter combinations run at once 
+	 */
+	public int getSweepParallelism() {
+		return sweepParallelism > 0 ? sweepParallelism 
+				: DEFAULT_SWEEP_PARALLELISM;
+	}
+
+	@DataBoundSetter
+	public void setSweepParallelism(int sweepParallelism) {
+		this.sweepParallelism = sweepParallelism;
+	}
+
+	/**
+	 * @return comma separated patterns of test cases not to run 
+	 */
+	public String getTestcaseExcludes() {
+		return testcaseExcludes == null ? "" : testcaseExcludes;
+	}
+
+	@DataBoundSetter
+	public void setTestcaseExcludes(String testcaseExcludes) {
+		this.testcaseExcludes = testcaseExcludes.trim();
+	}
+
+	/**
+	 * @return comma separated tags selecting discovered test cases 
+	 */
+	public String getTestcaseTags() {
+		return testcaseTags == null ? "" : testcaseTags;
+	}
+
+	@DataBoundSetter
+	public void setTestcaseTags(String testcaseTags) {
+		this.testcaseTags = testcaseTags.trim();
+	}
+
+	/**
+	 * @return true if unchanged test cases that passed before are skipped 
+	 */
+	public boolean isSkipUnchanged() {
+		return skipUnchanged;
+	}
+
+	@DataBoundSetter
+	public void setSkipUnchanged(boolean skipUnchanged) {
+		this.skipUnchanged = skipUnchanged;
+	}
+
+	/**
+	 * @return true if the workspace is exported to a cached iTAR file 
+	 */
+	public boolean isCacheItar() {
+		return cacheItar;
+	}
+
+	@DataBoundSetter
+	public void setCacheItar(boolean cacheItar) {
+		this.cacheItar = cacheItar;
+	}
+
+	/**
+	 * @return how often test cases that did not pass are rerun, 0 for never 
+	 */
+	public int getRetryCount() {
+		return Math.max(0, retryCount);
+	}
+
+	@DataBoundSetter
+	public void setRetryCount(int retryCount) {
+		this.retryCount = retryCount;
+	}
+
+	/**
+	 * @return true if failed test cases are rerun concurrently 
+	 */
+	public boolean isRetryInParallel() {
+		return retryInParallel;
+	}
+
+	@DataBoundSetter
+	public void setRetryInParallel(boolean retryInParallel) {
+		this.retryInParallel = retryInParallel;
+	}
+
+	/**
+	 * @return minutes allowed per test case, 0 for no limit 
+	 */
+	public int getTestTimeout() {
+		return Math.max(0, testTimeout);
+	}
+
+	@DataBoundSetter
+	public void setTestTimeout(int testTimeout) {
+		this.testTimeout = testTimeout;
+	}
+
+	/**
+	 * @return minutes allowed for all test cases, 0 for no limit 
+	 */
+	public int getSuiteTimeout() {
+		return Math.max(0, suiteTimeout);
+	}
+
+	@DataBoundSetter
+	public void setSuiteTimeout(int suiteTimeout) {
+		this.suiteTimeout = suiteTimeout;
+	}
+
+	public String getResumeFrom() {
+		return resumeFrom == null ? "" : resumeFrom;
+	}
+
+	@DataBoundSetter
+	public void setResumeFrom(String resumeFrom) {
+		this.resumeFrom = resumeFrom;
+	}
+
+	public String getHealthCheck() {
+		return healthCheck == null || healthCheck.isEmpty() 
+				? HEALTH_IGNORE : healthCheck;
+	}
+
+	@DataBoundSetter
+	public void setHealthCheck(String healthCheck) {
+		this.healthCheck = healthCheck;
+	}
+
+	public String getInstallation() {
+		return installation == null ? "" : installation;
+	}
+
+	@DataBoundSetter
+	public void setInstallation(String installation) {
+		this.installation = installation;
+	}
+
+	public boolean isSideLogs() {
+		return sideLogs;
+	}
+
+	@DataBoundSetter
+	public void setSideLogs(boolean sideLogs) {
+		this.sideLogs = sideLogs;
+	}
+
+	/**
+	 * @return seconds between resource samples, 0 for no sampling 
+	 */
+	public int getResourceInterval() {
+		return Math.max(0, resourceInterval);
+	}
+
+	@DataBoundSetter
+	public void setResourceInterval(int resourceInterval) {
+		this.resourceInterval = resourceInterval;
+	}
+
+	/**
+	 * @return resident memory in MB allowed, 0 for no limit 
+	 */
+	public int getMemoryLimit() {
+		return Math.max(0, memoryLimit);
+	}
+
+	@DataBoundSetter
+	public void setMemoryLimit(int memoryLimit) {
+		this.memoryLimit = memoryLimit;
+	}
+
+	public String getTestOrder() {
+		return testOrder == null || testOrder.isEmpty() 
+				? ORDER_LISTED : testOrder;
+	}
+
+	@DataBoundSetter
+	public void setTestOrder(String testOrder) {
+		this.testOrder = testOrder;
+	}
+
+	public String getDependencies() {
+		return dependencies == null ? "" : dependencies;
+	}
+
+	@DataBoundSetter
+	public void setDependencies(String dependencies) {
+		this.dependencies = dependencies;
+	}
+
+	/**
+	 * @return maximum number of test cases with dependencies run at once 
+	 */
+	public int getDependencyParallelism() {
+		return dependencyParallelism > 0 ? dependencyParallelism 
+				: getSweepParallelism();
+	}
+
+	@DataBoundSetter
+	public void setDependencyParallelism(int dependencyParallelism) {
+		this.dependencyParallelism = dependencyParallelism;
 	}
 
 	@Override
-	public boolean perform(final AbstractBuild<?, ?> build, 
-			final Launcher launcher, final BuildListener listener) {
+	public void perform(final Run<?, ?> run, final FilePath workspace, 
+			final Launcher launcher, final TaskListener listener) 
+					throws InterruptedException, IOException {
+		if (!execute(run, workspace, launcher, listener, 
+				run.getEnvironment(listener), new ArrayList<TestCaseResult>())) {
+			if (Thread.interrupted()) {
+				throw new InterruptedException("iTest step aborted");
+			}
+			throw new AbortException("iTest test cases did not pass");
+		}
+	}
+
+	/**
+	 * Run the test cases and attach their results to the run. Safe to call 
+	 * concurrently, for example from Pipeline parallel branches, as all 
+	 * state of an execution is kept in its own {@link Context}. 
+	 * 
+	 * @param run
+	 * @param workspace
+	 * @param launcher
+	 * @param listener
+	 * @param env environment of the step, including variables set by 
+	 * enclosing Pipeline steps 
+	 * @param results receives the results of this execution 
+	 * @return true if all test cases passed 
+	 */
+	boolean execute(final Run<?, ?> run, final FilePath workspace, 
+			final Launcher launcher, final TaskListener listener, 
+			final EnvVars env, final List<TestCaseResult> results) {
+
+		final Context x = new Context(run, workspace, launcher, listener, 
+				env);
+		x.progress = ITestProgressAction.attach(run); 
+		x.timeline = ITestTimelineAction.attach(run); 
+		x.step = x.timeline.nextStep(); 
+		ITestMetrics metrics = ITestMetrics.get(); 
+		metrics.stepStarted(); 
+		long start = System.nanoTime(); 
+		try { 
+			return execute(x, results); 
+		} finally { 
+			if (x.sampler != null) { 
+				x.sampler.stop(); 
+			}
+			if (x.reports != null) { 
+				//the step may have ended before finishing the reports 
+				x.reports.abort(); 
+			}
+			metrics.stepFinished(); 
+			x.timeline.record(x.step, "iTest step " + x.step, "step", start); 
+			x.timeline.printSummary(x.step, listener.getLogger()); 
+			if (x.isAborted()) { 
+				//let the caller end the build as aborted 
+				Thread.currentThread().interrupt(); 
+			}
+		}
+	}
+
+	/**
+	 * Record a phase of the step that ends now. 
+	 * @param x
+	 * @param name
+	 * @param start {@link System#nanoTime()} when the phase started 
+	 */
+	private static void phase(final Context x, final String name, 
+			final long start) { 
+		x.timeline.record(x.step, name, "phase", start); 
+	}
+
+	private boolean execute(final Context x, 
+			final List<TestCaseResult> results) {
+
+		long start = System.nanoTime(); 
+		GlobalConfig global = x.global;  
+		if (!getInstallation().isEmpty()) { 
+			if (!resolveInstallation(x)) { 
+				return BUILD_FAILURE; 
+			}
+		} else if (global.getRtPath().isEmpty()) {
+            x.itestrt = "itestrt";
+        } else if (global.getRtPath().contains(" ")) {
+            x.itestrt = String.format("\"%s\"", global.getRtPath());
+        } else {
+            x.itestrt = global.getRtPath();
+        }
+		phase(x, "Resolve iTestRT", start); 
+
+		start = System.nanoTime(); 
+		if (!checkDependencies(x, global)) { 
+			return BUILD_FAILURE; 
+		}
+		phase(x, "Check dependencies", start); 
+
+		start = System.nanoTime(); 
+		processBuildWorkspace(x); 
+
+		String itar = parseWorkspace(x); 
+		phase(x, "Resolve workspace", start); 
+		if (cacheItar) { 
+			start = System.nanoTime(); 
+			itar = prepareCachedItar(x, global); 
+			if (itar == null) { 
+				return BUILD_FAILURE; 
+			}
+			phase(x, "Cached iTAR export", start); 
+		}
+
+		String licenseServerURI = global.getLicenseServer(); 
+
+        x.iTestCommand = String.format("%s %s %s %s \"%s\"", x.itestrt, this.PARAM_LICENSE_SERVER, licenseServerURI, this.PARAM_ITAR, itar);
+
+		start = System.nanoTime(); 
+		ParameterSweep sweep; 
+		try { 
+			sweep = ParameterSweep.parse(params); 
+		} catch (IllegalArgumentException e) { 
+			x.listener.error(e.getMessage()); 
+			return BUILD_FAILURE; 
+		}
+		addTestExecutionOptions(x); 
+		List<String> testCaseEntries = discoverTestCases(x); 
+		if (testCaseEntries == null) {
+			return BUILD_FAILURE;
+		}
+		phase(x, "Discover test cases", start); 
+
+		Map<String, String> fingerprints = null;
+		if (skipUnchanged) {
+			start = System.nanoTime(); 
+			fingerprints = fingerprintTestCases(x, testCaseEntries);
+			if (fingerprints != null) {
+				testCaseEntries = skipUnchangedTestCases(x, sweep, 
+						testCaseEntries, fingerprints, results);
+			}
+			phase(x, "Skip unchanged test cases", start); 
+			if (testCaseEntries.isEmpty()) {
+				x.listener.getLogger().println("All test cases are unchanged "
+						+ "since they last passed");
+				ITestResultAction.addResults(x.run, results);
+				return BUILD_SUCCESS;
+			}
+		}
+		parseTestCases(x, testCaseEntries); 
+		if (getTestOrder().equals(ORDER_FAILURES_FIRST)) { 
+			start = System.nanoTime(); 
+			orderTestCases(x); 
+			phase(x, "Order test cases", start); 
+		}
+		TestDependencies dependencies; 
+		try { 
+			dependencies = TestDependencies.parse(getDependencies(), 
+					String.valueOf(x.workspace)); 
+		} catch (IllegalArgumentException e) { 
+			x.listener.error(e.getMessage()); 
+			return BUILD_FAILURE; 
+		}
+
+		x.checkpoint = new Checkpoint(x.run.getRootDir()); 
+		String resumeBuild = resumeFromBuild(x); 
+		if (!resumeBuild.isEmpty()) { 
+			start = System.nanoTime(); 
+			if (!resumeFromCheckpoint(x, resumeBuild, sweep, results)) { 
+				return BUILD_FAILURE; 
+			}
+			phase(x, "Resume from checkpoint", start); 
+		}
+
+		if (testReportRequired) { 
+			start = System.nanoTime(); 
+			if (!canInitializeReport(x, sweep)) {
+				return BUILD_FAILURE;
+			}
+			x.reports = new ReportStreamer(x.run, x.workspace, x.listener, 
+					reportTargets(x, sweep)); 
+			x.reports.setTimeline(x.timeline, x.step); 
+			phase(x, "Initialize reports", start); 
+		}
+
+		if (getResourceInterval() > 0) { 
+			x.resources = ITestResourceAction.attach(x.run); 
+			x.sampler = new ResourceSampler(x.resources, x.marker, 
+					x.workspace, x.listener, getMemoryLimit()); 
+			x.sampler.start(getResourceInterval()); 
+		}
+
+		start = System.nanoTime(); 
+		x.suiteDeadline = getSuiteTimeout() > 0 ? System.currentTimeMillis() 
+				+ TimeUnit.MINUTES.toMillis(getSuiteTimeout()) : 0;
+		boolean passed = BUILD_SUCCESS;
+		if (!dependencies.isEmpty()) { 
+			passed = runDependencyGraph(dependencies, sweep, x, results);
+		} else if (sweep.isSweep()) { 
+			passed = runParameterSweep(sweep, x, results);
+		} else {
+			ParameterSweep.Combination single = sweep.getCombinations().get(0);
+			Outcome outcome = executeInvocation(
+					new Invocation(single, pending(x, single), ""), x);
+			if (outcome != null) {
+				results.addAll(outcome.results);
+				passed = outcome.isPassed() && !timedOut(results);
+			}
+		}
+		phase(x, "Execute test cases", start); 
+		if (x.isAborted()) { 
+			return recordAborted(x, results, true); 
+		}
+
+		boolean rerun = false; 
+		//test cases with dependencies are rerun in dependency order 
+		if (getRetryCount() > 0 && dependencies.isEmpty() 
+				&& (x.sampler == null || !x.sampler.isLimitExceeded())) { 
+			start = System.nanoTime(); 
+			rerun = rerunFailedTestCases(sweep, x, results);
+			phase(x, "Rerun failed test cases", start); 
+			if (x.isAborted()) { 
+				return recordAborted(x, results, false); 
+			}
+		}
+		ITestResultAction.addResults(x.run, results);
+		ITestMetrics.get().countResults(results);
+		start = System.nanoTime(); 
+		uploadResults(x, results);
+		phase(x, "Spool results", start); 
+
+		if (testReportRequired) {
+			start = System.nanoTime(); 
+			if (!canFinalizeReport(x, sweep)) {
+				return BUILD_FAILURE;
+			}
+			phase(x, "Publish reports", start); 
+		}
+		if (rerun || !x.resumed.isEmpty()) {
+			//errors iTestRT printed in the last run of a test case still fail 
+			//the build 
+			passed = testPassed(results) && !x.isErrorReported();
+		}
+		if (fingerprints != null) {
+			start = System.nanoTime(); 
+			recordResults(x, fingerprints, results);
+			phase(x, "Record passing fingerprints", start); 
+		}
+		return passed;
+	}
+
+	/**
+	 * Find itestrt of the selected installation on the build's node. 
+	 * @param x
+	 * @return false if the installation cannot be used on the node 
+	 */
+	private boolean resolveInstallation(final Context x) { 
+		ITestInstallation tool = ITestInstallation.get(getInstallation()); 
+		if (tool == null) { 
+			x.listener.error("No iTest installation named " 
+					+ getInstallation()); 
+			return BUILD_FAILURE; 
+		}
+		try { 
+			ExecutableCache.Executable executable = ExecutableCache.resolve(
+					tool, x.workspace, x.launcher, x.env, x.listener); 
+			if (executable == null) { 
+				x.listener.error("itestrt of iTest installation " 
+						+ tool.getName() + " not found on this node"); 
+				return BUILD_FAILURE; 
+			}
+			x.itestrt = executable.getCommand(); 
+			x.listener.getLogger().println(String.format("Using iTest %s "
+					+ "(%s) at %s", tool.getName(), executable.version, 
+					executable.path)); 
+			return BUILD_SUCCESS; 
+		} catch (IOException e) { 
+			e.printStackTrace(x.listener.error("Cannot resolve iTest "
+					+ "installation " + tool.getName())); 
+		} catch (InterruptedException e) { 
+			x.listener.getLogger().println("Interrupted resolving iTest "
+					+ "installation"); 
+		}
+		return BUILD_FAILURE; 
+	}
+
+	/**
+	 * Fail or wait before starting iTestRT when a dependency it needs is 
+	 * known to be down, depending on the health check setting. 
+	 * @param x
+	 * @param global
+	 * @return false if the build must not proceed 
+	 */
+	private boolean checkDependencies(final Context x, 
+			final GlobalConfig global) { 
+		if (HEALTH_IGNORE.equals(getHealthCheck())) { 
+			return BUILD_SUCCESS; 
+		}
+		//iTestRT only writes to the database itself without the uploader, 
+		//and only when it generates a test report 
+		boolean database = testReportRequired && !global.isUploadResults() 
+				&& !global.getDbUsername().isEmpty(); 
+		long deadline = System.currentTimeMillis() + (getSuiteTimeout() > 0 
+				? TimeUnit.MINUTES.toMillis(getSuiteTimeout()) 
+				: DEFAULT_HEALTH_WAIT); 
+		boolean waiting = false; 
+		long start = System.nanoTime(); 
+		while (true) { 
+			List<HealthProber.Status> down = 
+					HealthProber.get().getDown(database); 
+			if (down.isEmpty()) { 
+				if (waiting) { 
+					x.listener.getLogger().println("iTest dependencies are "
+							+ "up again"); 
+					ITestMetrics.get().dependencyWaited(
+							System.nanoTime() - start); 
+				}
+				return BUILD_SUCCESS; 
+			}
+			if (HEALTH_FAIL.equals(getHealthCheck()) 
+					|| System.currentTimeMillis() > deadline) { 
+				for (HealthProber.Status status : down) { 
+					x.listener.error(status.toString()); 
+				}
+				if (waiting) { 
+					ITestMetrics.get().dependencyWaited(
+							System.nanoTime() - start); 
+				}
+				return BUILD_FAILURE; 
+			}
+			if (!waiting) { 
+				for (HealthProber.Status status : down) { 
+					x.listener.getLogger().println("Waiting for " + status); 
+				}
+				waiting = true; 
+			}
+			try { 
+				Thread.sleep(HealthProber.INTERVAL); 
+			} catch (InterruptedException e) { 
+				Thread.currentThread().interrupt(); 
+				return BUILD_FAILURE; 
+			}
+		}
+	}
+
+	/**
+	 * Hand results to the background uploader when the plugin owns the 
+	 * upload to the test report database. 
+	 * @param x
+	 * @param results
+	 */
+	private void uploadResults(final Context x, 
+			final List<TestCaseResult> results) { 
+		if (!x.global.isUploadResults() || results.isEmpty()) { 
+			return; 
+		}
+		try { 
+			ResultUploader.get().submit(x.run, dbCustomTag, results); 
+		} catch (IOException e) { 
+			e.printStackTrace(x.listener.error("Cannot spool results for "
+					+ "upload")); 
+		}
+	}
+
+	/**
+	 * Expand environment variables for ${WORKSPACE}. 
+	 * @param x
+	 * @param src 
+	 */
+	private void processBuildWorkspace(final Context x) {
+
+        String front = String.valueOf(x.workspace);
+
+        if (!testbed.isEmpty()) {
+            if (testbed.startsWith(VAR_WORKSPACE)) {
+                String back = testbed.replace(VAR_WORKSPACE, "");
+                x.safeTestbed = front + back;
+            } else if (!testbed.startsWith(URI_PROJECT) && !testbed.startsWith(URI_FILE)) {
+                x.safeTestbed = String.format("%s%s", URI_FILE, this.testbed);
+            } else {
+                x.safeTestbed = testbed;
+            }
+            x.safeTestbed = x.safeTestbed.replace(" ", x.spaceCharacter);
+        }
 
-        if (launcher.isUnix()) {
-            SPACE_CHARACTER = "%20";
+        if (!paramFile.isEmpty()) {
+            if (paramFile.startsWith(VAR_WORKSPACE)) {
+                String back = paramFile.replace(VAR_WORKSPACE, "");
+                x.safeParamFile = front + back;
+            } else if (!paramFile.startsWith(URI_PROJECT) && !paramFile.startsWith(URI_FILE)) {
+                x.safeParamFile = String.format("%s%s", URI_FILE, this.paramFile);
+            } else {
+                x.safeParamFile = paramFile;
+            }
+            x.safeParamFile = x.safeParamFile.replace(" ", x.spaceCharacter);
         }
+	}
+
+	/**
+	 * Run iTestRT commands through the shell of the node, sh on Unix and a 
+	 * batch file on Windows. 
+	 * 
+	 * @param command
+	 * @param x
+	 * @param listener receives the command output 
+	 * @return false if the command was interrupted 
+	 */
+	private boolean executeCommand(final String command, final Context x, 
+			final TaskListener listener) { 
+
+		String uniformPathSeparators = command.replaceAll("\\\\", "/"); 
+		FilePath script = null;
+		try {
+			String[] cmds;
+			if (x.launcher.isUnix()) {
+				script = x.workspace.createTextTempFile("itest", ".sh", 
+						uniformPathSeparators, false);
+				cmds = new String[] { "sh", "-xe", script.getRemote() };
+			} else {
+				script = x.workspace.createTextTempFile("itest", ".bat", 
+						uniformPathSeparators + "\r\nexit %ERRORLEVEL%", false);
+				cmds = new String[] { "cmd", "/c", "call", script.getRemote() };
+			}
+			EnvVars env = new EnvVars(x.env);
+			env.put(VAR_MARKER, x.marker);
+			Proc proc = x.launcher.launch().cmds(cmds).envs(env)
+					.stdout(listener).pwd(x.workspace).start();
+			try {
+				proc.join();
+			} catch (InterruptedException e) {
+				killProcessTree(proc, x);
+				return false;
+			}
+			return true;
+		} catch (IOException e) {
+			Util.displayIOException(e, listener);
+			e.printStackTrace(listener.fatalError("Command execution failed"));
+			return true;
+		} catch (InterruptedException e) {
+			return false;
+		} finally {
+			if (script != null) {
+				try {
+					script.delete();
+				} catch (Exception e) {
+					e.printStackTrace();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Kill an interrupted iTestRT run and every process it started, so 
+	 * licenses and testbeds are released at once. Processes that left the 
+	 * process tree are found by {@link #VAR_MARKER} in their environment. 
+	 * 
+	 * @param proc
+	 * @param x
+	 */
+	private static void killProcessTree(final Proc proc, final Context x) { 
+		long start = System.nanoTime();
+		try {
+			proc.kill();
+			x.launcher.kill(Collections.singletonMap(VAR_MARKER, x.marker));
+			x.listener.getLogger().println(String.format("Killed iTestRT "
+					+ "process tree in %d ms", TimeUnit.NANOSECONDS.toMillis(
+							System.nanoTime() - start)));
+		} catch (IOException e) {
+			e.printStackTrace(x.listener.error("Failed to kill iTestRT"));
+		} catch (InterruptedException e) {
+			x.listener.error("Interrupted while killing iTestRT");
+		}
+		x.timeline.record(x.step, "Kill iTestRT", "phase", start);
+	}
+
+	/**
+	 * Record the results of an aborted step: test cases that completed, 
+	 * test cases that were running as aborted and the others as not run. 
+	 * 
+	 * @param x
+	 * @param results results so far 
+	 * @param partial true to add the results of the interrupted iTestRT runs 
+	 * @return false 
+	 */
+	private boolean recordAborted(final Context x, 
+			final List<TestCaseResult> results, final boolean partial) { 
+		if (partial) {
+			results.addAll(x.getPartialResults());
+		}
+		ITestResultAction.addResults(x.run, results);
+		ITestMetrics.get().countResults(results);
+		if (x.reports != null) {
+			x.reports.abort();
+		}
+		logResumeHint(x);
+		x.listener.getLogger().println(String.format("iTest step aborted, "
+				+ "iTestRT stopped and %d results recorded in %d ms", 
+				results.size(), x.getAbortMillis()));
+		return BUILD_FAILURE;
+	}
+
+	/**
+	 * @param invocation
+	 * @return a not run result for every test case of an invocation 
+	 */
+	private static List<TestCaseResult> notRun(final Invocation invocation) { 
+		List<TestCaseResult> results = new ArrayList<TestCaseResult>();
+		for (String test : invocation.tests) {
+			results.add(new TestCaseResult(test, 
+					invocation.combination.getLabel(), 
+					TestCaseResult.STATUS_NOT_RUN, 0));
+		}
+		return results;
+	}
+
+	/**
+	 * Interrupt the iTestRT runs of a pool and wait for them to kill their 
+	 * process trees and record what they completed. 
+	 * @param executor
+	 * @return true if every run ended 
+	 */
+	private static boolean stopInvocations(final ExecutorService executor) { 
+		executor.shutdownNow();
+		try {
+			return executor.awaitTermination(TEARDOWN_TIMEOUT, 
+					TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			//aborted again, stop waiting 
+			return false;
+		}
+	}
+
+	/**
+	 * Run every combination of a parameter sweep as its own iTestRT 
+	 * invocation, at most {@link #getSweepParallelism()} at a time. 
+	 * 
+	 * @param sweep
+	 * @param x
+	 * @param results receives the results of every combination 
+	 * @return true if every combination passed 
+	 */
+	private boolean runParameterSweep(final ParameterSweep sweep, 
+			final Context x, final List<TestCaseResult> results) { 
+
+		List<Invocation> invocations = new ArrayList<Invocation>();
+		for (ParameterSweep.Combination combination : sweep.getCombinations()) {
+			List<String> tests = pending(x, combination);
+			if (!tests.isEmpty()) {
+				invocations.add(new Invocation(combination, tests, 
+						"[" + combination.getLabel() + "] "));
+			}
+		}
+		if (invocations.isEmpty()) {
+			return BUILD_SUCCESS;
+		}
+		int parallelism = Math.min(getSweepParallelism(), invocations.size());
+		x.listener.getLogger().println(String.format("Running %d parameter "
+				+ "combinations, %d at a time", invocations.size(), parallelism));
+
+		List<Outcome> outcomes = executeConcurrently(invocations, 
+				parallelism, x);
+		if (outcomes == null) {
+			if (!x.isAborted()) {
+				logResumeHint(x);
+			}
+			return BUILD_FAILURE;
+		}
+
+		boolean passed = BUILD_SUCCESS;
+		x.listener.getLogger().println("Parameter sweep results:");
+		for (int i = 0; i < invocations.size(); i++) {
+			Outcome outcome = outcomes.get(i);
+			results.addAll(outcome.results);
+			passed &= outcome.isPassed();
+			x.listener.getLogger().println(String.format("  %-4s %s", 
+					outcome.isPassed() ? "PASS" : "FAIL", 
+					invocations.get(i).combination.getLabel()));
+		}
+		return passed;
+	}
+
+	/**
+	 * Run each test case in its own iTestRT run as soon as the test cases 
+	 * it depends on have passed, or finished for always after rules, at most 
+	 * {@link #getDependencyParallelism()} at a time. A test case that did 
+	 * not pass is rerun up to {@link #getRetryCount()} times before the test 
+	 * cases depending on it are skipped. Every combination of a sweep has 
+	 * its own graph. 
+	 * 
+	 * @param dependencies
+	 * @param sweep
+	 * @param x
+	 * @param results receives the result of every test case as it completes 
+	 * @return true if every test case passed 
+	 */
+	private boolean runDependencyGraph(final TestDependencies dependencies, 
+			final ParameterSweep sweep, final Context x, 
+			final List<TestCaseResult> results) { 
+
+		Map<String, Set<String>> graph = 
+				dependencies.prerequisites(x.testCaseNames);
+		Set<String> cycle = TestDependencies.cycle(graph);
+		if (!cycle.isEmpty()) {
+			x.listener.error("Test case dependencies form a cycle: " + cycle);
+			return BUILD_FAILURE;
+		}
+		Map<String, Set<String>> unconditional = 
+				dependencies.unconditional(x.testCaseNames);
+		Map<String, List<String>> dependants = 
+				new HashMap<String, List<String>>();
+		for (String test : x.testCaseNames) {
+			dependants.put(test, new ArrayList<String>());
+		}
+		for (Map.Entry<String, Set<String>> e : graph.entrySet()) {
+			for (String prerequisite : e.getValue()) {
+				dependants.get(prerequisite).add(e.getKey());
+			}
+		}
+
+		//test cases not started yet and how many prerequisites they wait for, 
+		//prerequisites passed in a resumed build do not count 
+		Map<String, Invocation> nodes = new LinkedHashMap<String, Invocation>();
+		Map<String, Integer> waiting = new HashMap<String, Integer>();
+		for (ParameterSweep.Combination c : sweep.getCombinations()) {
+			String prefix = sweep.isSweep() ? "[" + c.getLabel() + "] " : "";
+			List<String> tests = pending(x, c);
+			x.progress.queue(c.getLabel(), tests);
+			for (String test : tests) {
+				nodes.put(ReportStreamer.key(c.getLabel(), test), new Invocation(
+						c, Collections.singletonList(test), prefix));
+			}
+			for (String test : tests) {
+				int count = 0;
+				for (String prerequisite : graph.get(test)) {
+					if (nodes.containsKey(ReportStreamer.key(c.getLabel(), 
+							prerequisite))) {
+						count++;
+					}
+				}
+				waiting.put(ReportStreamer.key(c.getLabel(), test), count);
+			}
+		}
+		if (nodes.isEmpty()) {
+			return BUILD_SUCCESS;
+		}
+		int parallelism = Math.min(getDependencyParallelism(), nodes.size());
+		x.listener.getLogger().println(String.format("Running %d test cases "
+				+ "in dependency order, %d at a time", nodes.size(), 
+				parallelism));
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, parallelism));
+		CompletionService<Outcome> completion = 
+				new ExecutorCompletionService<Outcome>(executor);
+		Map<Future<Outcome>, Invocation> running = 
+				new HashMap<Future<Outcome>, Invocation>();
+		//results of the earlier runs of test cases being rerun 
+		Map<String, List<TestCaseResult>> rerunning = 
+				new HashMap<String, List<TestCaseResult>>();
+		boolean passed = BUILD_SUCCESS;
+		try {
+			for (Map.Entry<String, Invocation> node : nodes.entrySet()) {
+				if (waiting.get(node.getKey()) == 0) {
+					waiting.remove(node.getKey());
+					running.put(submitInvocation(completion, node.getValue(), 
+							x), node.getValue());
+				}
+			}
+			while (!running.isEmpty()) {
+				Future<Outcome> done = completion.take();
+				Invocation node = running.remove(done);
+				Outcome outcome = done.get();
+				String label = node.combination.getLabel();
+				String key = ReportStreamer.key(label, node.tests.get(0));
+				List<TestCaseResult> nodeResults = 
+						withReruns(rerunning.remove(key), outcome.results);
+				boolean nodePassed = outcome.isPassed() 
+						&& !timedOut(outcome.results);
+				int attempt = nodeResults.get(0).getAttempts();
+				if (!nodePassed && attempt <= getRetryCount() 
+						&& !x.isSuiteExpired() && (x.sampler == null 
+								|| !x.sampler.isLimitExceeded())) {
+					x.listener.getLogger().println(String.format("%sRerunning "
+							+ "%s (attempt %d of %d)", node.prefix, 
+							node.tests.get(0), attempt, getRetryCount()));
+					x.rerunning(label, node.tests.get(0));
+					rerunning.put(key, nodeResults);
+					Invocation rerun = new Invocation(node.combination, 
+							node.tests, "[rerun " + attempt + "] " 
+									+ nodes.get(key).prefix);
+					running.put(submitInvocation(completion, rerun, x), rerun);
+					continue;
+				}
+				results.addAll(nodeResults);
+				passed &= nodePassed;
+				for (String ready : release(label, node.tests.get(0), 
+						nodePassed, dependants, unconditional, waiting, x, 
+						results)) {
+					running.put(submitInvocation(completion, nodes.get(ready), 
+							x), nodes.get(ready));
+				}
+			}
+			return passed;
+		} catch (InterruptedException e) {
+			x.listener.getLogger().println("iTestRT runs interrupted");
+			x.aborted(Collections.<TestCaseResult>emptyList());
+			stopInvocations(executor);
+			for (String key : waiting.keySet()) {
+				x.aborted(notRun(nodes.get(key)));
+			}
+			return BUILD_FAILURE;
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace(
+					x.listener.error("iTestRT run failed"));
+		} finally {
+			executor.shutdownNow();
+		}
+		logResumeHint(x);
+		return BUILD_FAILURE;
+	}
+
+	/**
+	 * @param earlier results of the earlier runs of a test case, may be null 
+	 * @param latest results of its latest run 
+	 * @return the results after the latest run 
+	 */
+	private static List<TestCaseResult> withReruns(
+			final List<TestCaseResult> earlier, 
+			final List<TestCaseResult> latest) { 
+		if (earlier == null) {
+			return latest;
+		}
+		List<TestCaseResult> merged = new ArrayList<TestCaseResult>();
+		for (int i = 0; i < latest.size(); i++) {
+			merged.add(i < earlier.size() 
+					? earlier.get(i).withRerun(latest.get(i)) : latest.get(i));
+		}
+		return merged;
+	}
+
+	/**
+	 * @return the run of the invocation, failing with an 
+	 * InterruptedException if the invocation was interrupted 
+	 */
+	private Future<Outcome> submitInvocation(
+			final CompletionService<Outcome> completion, 
+			final Invocation invocation, final Context x) { 
+		return completion.submit(new Callable<Outcome>() {
+			public Outcome call() throws Exception {
+				Outcome outcome = executeInvocation(invocation, x);
+				if (outcome == null) {
+					throw new InterruptedException(
+							invocation.prefix + "interrupted");
+				}
+				return outcome;
+			}
+		});
+	}
+
+	/**
+	 * Count a finished test case for the test cases depending on it. 
+	 * Dependants of a test case that did not pass are skipped, directly or 
+	 * not, unless they declared it with an always after rule. 
+	 * 
+	 * @param label combination of the test case 
+	 * @param finished test case that finished 
+	 * @param passed whether the finished test case passed 
+	 * @param dependants dependants of every test case 
+	 * @param unconditional prerequisites of always after rules 
+	 * @param waiting test cases not started, updated 
+	 * @param x
+	 * @param results receives the skipped test cases 
+	 * @return keys of the test cases ready to run 
+	 */
+	private List<String> release(final String label, final String finished, 
+			final boolean passed, final Map<String, List<String>> dependants, 
+			final Map<String, Set<String>> unconditional, 
+			final Map<String, Integer> waiting, final Context x, 
+			final List<TestCaseResult> results) { 
+		List<String> ready = new ArrayList<String>();
+		List<String> skipped = new ArrayList<String>();
+		String test = finished;
+		boolean testPassed = passed;
+		while (test != null) {
+			for (String dependant : dependants.get(test)) {
+				String key = ReportStreamer.key(label, dependant);
+				Integer count = waiting.get(key);
+				if (count == null) {
+					continue;
+				}
+				if (testPassed || unconditional.get(dependant).contains(test)) {
+					if (count > 1) {
+						waiting.put(key, count - 1);
+					} else {
+						waiting.remove(key);
+						ready.add(key);
+					}
+					continue;
+				}
+				waiting.remove(key);
+				x.listener.getLogger().println(String.format("%sSkipping %s, "
+						+ "%s did not pass", label.isEmpty() ? "" 
+								: "[" + label + "] ", dependant, test));
+				results.add(new TestCaseResult(dependant, label, 
+						TestCaseResult.STATUS_SKIPPED, 0));
+				x.progress.finished(label, dependant, 
+						TestCaseResult.STATUS_SKIPPED, 0);
+				skipped.add(dependant);
+			}
+			test = skipped.isEmpty() ? null 
+					: skipped.remove(skipped.size() - 1);
+			testPassed = false;
+		}
+		return ready;
+	}
+
+	/**
+	 * Rerun test cases that did not pass, up to {@link #getRetryCount()} 
+	 * times and not after the suite timeout. A test case that passes on a 
+	 * rerun is classified as flaky and errors of its earlier runs no longer 
+	 * count. 
+	 * 
+	 * @param sweep
+	 * @param x
+	 * @param results results so far, updated with the final outcomes 
+	 * @return true if any test case was rerun 
+	 */
+	private boolean rerunFailedTestCases(final ParameterSweep sweep, 
+			final Context x, final List<TestCaseResult> results) { 
+
+		boolean rerun = false;
+		for (int attempt = 1; attempt <= getRetryCount(); attempt++) {
+			if (x.isSuiteExpired()) {
+				x.listener.getLogger().println(String.format("Suite timeout "
+						+ "of %d minutes reached, not rerunning test cases", 
+						getSuiteTimeout()));
+				break;
+			}
+			List<Invocation> invocations = new ArrayList<Invocation>();
+			int failing = 0;
+			for (ParameterSweep.Combination c : sweep.getCombinations()) {
+				List<String> tests = new ArrayList<String>();
+				for (TestCaseResult result : results) {
+					if (!result.isPassed() && !result.isCached() 
+							&& !result.getStatus().equals(
+									TestCaseResult.STATUS_SKIPPED) 
+							&& result.getCombination().equals(c.getLabel())) {
+						tests.add(result.getTestCase());
+					}
+				}
+				for (String test : tests) {
+					x.rerunning(c.getLabel(), test);
+				}
+				failing += tests.size();
+				String prefix = "[rerun " + attempt + "] " 
+						+ (sweep.isSweep() ? "[" + c.getLabel() + "] " : "");
+				if (!retryInParallel) {
+					if (!tests.isEmpty()) {
+						invocations.add(new Invocation(c, tests, prefix));
+					}
+					continue;
+				}
+				for (String test : tests) {
+					invocations.add(new Invocation(c, 
+							Collections.singletonList(test), prefix));
+				}
+			}
+			if (invocations.isEmpty()) {
+				break;
+			}
+
+			x.listener.getLogger().println(String.format("Rerunning %d test "
+					+ "cases that did not pass (attempt %d of %d)", failing, 
+					attempt, getRetryCount()));
+			List<Outcome> outcomes = executeConcurrently(invocations, 
+					retryInParallel ? getSweepParallelism() : 1, 
+					x);
+			if (outcomes == null) {
+				break;
+			}
+			rerun = true;
+			for (Outcome outcome : outcomes) {
+				for (TestCaseResult retried : outcome.results) {
+					for (int j = 0; j < results.size(); j++) {
+						TestCaseResult result = results.get(j);
+						if (result.getTestCase().equals(retried.getTestCase()) 
+								&& result.getCombination().equals(
+										retried.getCombination())) {
+							results.set(j, result.withRerun(retried));
+						}
+					}
+				}
+			}
+		}
+
+		if (rerun) {
+			x.listener.getLogger().println("Rerun results:");
+			for (TestCaseResult result : results) {
+				if (result.getAttempts() > 1) {
+					x.listener.getLogger().println(String.format("  %-6s %s %s "
+							+ "(%d attempts)", result.isFlaky() ? "FLAKY" 
+							: "FAILED", result.getTestCase(), 
+							result.getCombination(), result.getAttempts()));
+				}
+			}
+		}
+		return rerun;
+	}
+
+	/**
+	 * Run iTestRT invocations on a bounded thread pool. 
+	 * 
+	 * @param invocations
+	 * @param parallelism maximum number of concurrent invocations 
+	 * @param x
+	 * @return an outcome per invocation in the same order, or null if the 
+	 * invocations were interrupted or failed to run 
+	 */
+	private List<Outcome> executeConcurrently(
+			final List<Invocation> invocations, final int parallelism, 
+			final Context x) { 
+
+		ExecutorService executor = Executors.newFixedThreadPool(
+				Math.max(1, Math.min(parallelism, invocations.size())));
+		List<Future<Outcome>> runs = new ArrayList<Future<Outcome>>();
+		try {
+			for (final Invocation invocation : invocations) {
+				runs.add(executor.submit(new Callable<Outcome>() {
+					public Outcome call() throws Exception {
+						Outcome outcome = executeInvocation(invocation, 
+								x);
+						if (outcome == null) {
+							throw new InterruptedException(
+									invocation.prefix + "interrupted");
+						}
+						return outcome;
+					}
+				}));
+			}
+
+			List<Outcome> outcomes = new ArrayList<Outcome>();
+			for (Future<Outcome> run : runs) {
+				outcomes.add(run.get());
+			}
+			return outcomes;
+		} catch (InterruptedException e) {
+			x.listener.getLogger().println("iTestRT runs interrupted");
+			x.aborted(Collections.<TestCaseResult>emptyList());
+			boolean stopped = stopInvocations(executor);
+			for (int i = 0; i < runs.size(); i++) {
+				Future<Outcome> run = runs.get(i);
+				if (!run.isDone()) {
+					if (stopped) {
+						//never started 
+						x.aborted(notRun(invocations.get(i)));
+					}
+					continue;
+				}
+				try {
+					x.aborted(run.get().results);
+				} catch (ExecutionException interrupted) {
+					//recorded its partial results itself 
+				} catch (InterruptedException again) {
+					break;
+				}
+			}
+		} catch (ExecutionException e) {
+			e.getCause().printStackTrace(
+					x.listener.error("iTestRT run failed"));
+		} finally {
+			executor.shutdownNow();
+		}
+		return null;
+	}
+
+	/**
+	 * Run the test cases of an invocation. When a test case exceeds the test 
+	 * timeout, iTestRT is killed, the test case is marked as timed out and 
+	 * iTestRT is started again with the test cases that had not run yet. 
+	 * Once the suite timeout passes the remaining test cases are not run. 
+	 * 
+	 * @param invocation
+	 * @param x
+	 * @return results for every test case of the invocation, or null if the 
+	 * build was interrupted 
+	 */
+	private Outcome executeInvocation(final Invocation invocation, 
+			final Context x) { 
+
+		Outcome outcome = new Outcome();
+		String label = invocation.combination.getLabel();
+		List<String> remaining = invocation.tests;
+		long testTimeoutMillis = TimeUnit.MINUTES.toMillis(getTestTimeout());
+		x.progress.queue(label, remaining);
+		while (!remaining.isEmpty()) {
+			TestOutputMonitor monitor = 
+					new TestOutputMonitor(x.listener.getLogger(), invocation.prefix);
+			monitor.setCheckpoint(x.checkpoint, label, remaining);
+			monitor.setProgress(x.progress);
+			monitor.setReportStreamer(x.reports);
+			monitor.setResources(x.resources);
+			if (sideLogs) {
+				monitor.setSideLogs(new SideLogs(x.run.getRootDir()));
+			}
+			x.progress.started(label, remaining.get(0));
+			TestWatchdog watchdog = null;
+			if (testTimeoutMillis > 0 || x.suiteDeadline > 0) {
+				watchdog = new TestWatchdog(monitor, Thread.currentThread(), 
+						testTimeoutMillis, x.suiteDeadline);
+				watchdog.start();
+			}
+			if (x.sampler != null) {
+				x.sampler.watch(Thread.currentThread());
+			}
+			long start = System.nanoTime();
+			boolean completed = executeMonitored(
+					commandFor(x, invocation.combination, remaining), monitor, 
+					x);
+			x.timeline.record(x.step, label.isEmpty() ? "iTestRT" 
+					: "iTestRT " + label, "itestrt", start);
+			int timedOut = -1;
+			if (watchdog != null) {
+				watchdog.stop();
+				timedOut = watchdog.getTimedOutIndex();
+			}
+			if (timedOut >= 0 && isUserAborted(x)) {
+				//the build was aborted while the watchdog stopped iTestRT 
+				timedOut = -1;
+				completed = false;
+			}
+
+			List<String> statuses = monitor.getStatuses();
+			List<Long> durations = monitor.getDurations();
+			outcome.errorReported |= monitor.isErrorReported();
+			for (int index : monitor.getErrorIndexes()) {
+				x.errorReported(label, index < remaining.size() 
+						? remaining.get(index) : null);
+			}
+			if (x.sampler != null) {
+				x.sampler.unwatch(Thread.currentThread());
+				if (x.sampler.isLimitExceeded()) {
+					recordStopped(invocation, remaining, monitor, x, outcome, 
+							TestCaseResult.STATUS_MEMORY_EXCEEDED);
+					break;
+				}
+			}
+			if (timedOut < 0 || timedOut >= remaining.size()) {
+				if (!completed && timedOut < 0) {
+					recordStopped(invocation, remaining, monitor, x, outcome, 
+							TestCaseResult.STATUS_ABORTED);
+					x.aborted(outcome.results);
+					return null;
+				}
+				outcome.add(invocation, remaining, statuses, durations, 
+						remaining.size());
+				break;
+			}
+
+			outcome.add(invocation, remaining, statuses, durations, timedOut);
+			String test = remaining.get(timedOut);
+			TestCaseResult timedOutResult = new TestCaseResult(test, label, 
+					TestCaseResult.STATUS_TIMED_OUT, 
+					System.currentTimeMillis() - monitor.getRunningSince());
+			outcome.results.add(timedOutResult);
+			x.progress.finished(label, test, timedOutResult.getStatus(), 
+					timedOutResult.getDuration());
+			if (x.resources != null) {
+				x.resources.boundary(test, timedOutResult.getStatus());
+			}
+			remaining = remaining.subList(timedOut + 1, remaining.size());
+
+			if (watchdog.isSuiteExpired()) {
+				x.listener.error(String.format("Suite timeout of %d minutes "
+						+ "reached while running %s, %d test cases not run", 
+						getSuiteTimeout(), test, remaining.size()));
+				for (String notRun : remaining) {
+					outcome.results.add(new TestCaseResult(notRun, label, 
+							TestCaseResult.STATUS_NOT_RUN, 0));
+					x.progress.finished(label, notRun, 
+							TestCaseResult.STATUS_NOT_RUN, 0);
+				}
+				break;
+			}
+			x.listener.error(String.format("%s timed out after %d minutes, "
+					+ "restarting iTestRT with %d remaining test cases", 
+					test, getTestTimeout(), remaining.size()));
+		}
+		return outcome;
+	}
+
+	/**
+	 * @return true if the step or its build was aborted, as opposed to 
+	 * interrupted by a {@link TestWatchdog} 
+	 */
+	private static boolean isUserAborted(final Context x) { 
+		if (x.isAborted()) {
+			return true;
+		}
+		Executor executor = x.run.getExecutor();
+		return executor != null 
+				&& !executor.getCausesOfInterruption().isEmpty();
+	}
+
+	/**
+	 * Record the results of an iTestRT run that was killed, for exceeding 
+	 * the memory limit or because the build was aborted: the test case it 
+	 * was running gets the given status and the remaining test cases did 
+	 * not run. 
+	 * 
+	 * @param invocation
+	 * @param remaining test cases passed to iTestRT 
+	 * @param monitor
+	 * @param x
+	 * @param outcome receives the results 
+	 * @param status status of the running test case 
+	 */
+	private void recordStopped(final Invocation invocation, 
+			final List<String> remaining, final TestOutputMonitor monitor, 
+			final Context x, final Outcome outcome, final String status) { 
+		String label = invocation.combination.getLabel();
+		int ran = Math.min(monitor.getStatuses().size(), remaining.size());
+		outcome.add(invocation, remaining, monitor.getStatuses(), 
+				monitor.getDurations(), ran);
+		outcome.errorReported = true;
+		for (int i = ran; i < remaining.size(); i++) {
+			TestCaseResult result = i == ran 
+					? new TestCaseResult(remaining.get(i), label, status, 
+							System.currentTimeMillis() 
+									- monitor.getRunningSince()) 
+					: new TestCaseResult(remaining.get(i), label, 
+							TestCaseResult.STATUS_NOT_RUN, 0);
+			outcome.results.add(result);
+			x.progress.finished(label, result.getTestCase(), 
+					result.getStatus(), result.getDuration());
+		}
+	}
+
+	/**
+	 * Run an iTestRT command, watching its output for test case results. 
+	 * 
+	 * @param command
+	 * @param prefix text in front of each line copied to the build log 
+	 * @param x
+	 * @return the monitor, or null if the command was interrupted 
+	 */
+	private TestOutputMonitor executeMonitored(final String command, 
+			final String prefix, final Context x) { 
+		TestOutputMonitor monitor = 
+				new TestOutputMonitor(x.listener.getLogger(), prefix);
+		return executeMonitored(command, monitor, x) 
+				? monitor : null;
+	}
+
+	/**
+	 * Run an iTestRT command, copying its output through a monitor. 
+	 * 
+	 * @param command
+	 * @param monitor
+	 * @param x
+	 * @return false if the command was interrupted 
+	 */
+	private boolean executeMonitored(final String command, 
+			final TestOutputMonitor monitor, final Context x) { 
+		BuildListener runListener = new StreamBuildListener(monitor, 
+				Charset.forName("UTF-8"));
+		boolean completed = executeCommand(command, x, runListener);
+		runListener.getLogger().flush();
+		try {
+			monitor.close();
+		} catch (IOException e) {
+			e.printStackTrace();
+		}
+		return completed;
+	}
+
+	/**
+	 * State of one execution of the step. A builder instance is shared by 
+	 * concurrent builds of its job, and a Pipeline may run the step in 
+	 * several parallel branches, so nothing run specific is kept in fields. 
+	 */
+	private static final class Context { 
+		private final Run<?, ?> run;
+		private final FilePath workspace;
+		private final Launcher launcher;
+		private final TaskListener listener;
+		private final EnvVars env;
+		/**
+		 * Global settings, read once per execution. 
+		 */
+		private final GlobalConfig global = GlobalConfig.get();
+		private final String spaceCharacter;
+		private final List<String> testCaseNames = new ArrayList<String>();
+		/**
+		 * Entry of the test case list each test case URI was resolved from. 
+		 */
+		private final Map<String, String> testCaseEntries = 
+				new HashMap<String, String>();
+		private final Map<String, Set<String>> resumed = 
+				new HashMap<String, Set<String>>();
+		private String safeTestbed = "";
+		private String safeParamFile = "";
+		private String iTestCommand = "";
+		private String itestrt = "";
+		private long suiteDeadline;
+		private Checkpoint checkpoint;
+		private String resumedBuildId;
+		private ITestProgressAction progress;
+		private ReportStreamer reports;
+		private ITestTimelineAction timeline;
+		private int step;
+		private ITestResourceAction resources;
+		private ResourceSampler sampler;
+		/**
+		 * Value of {@link ITest#VAR_MARKER} for the processes of the step. 
+		 */
+		private final String marker = UUID.randomUUID().toString();
+		private final List<TestCaseResult> partial = 
+				new ArrayList<TestCaseResult>();
+		private long abortedAt;
+		/**
+		 * Keys of the test cases iTestRT printed an error message for in 
+		 * their last run. 
+		 */
+		private final Set<String> errors = new HashSet<String>();
+		private boolean unattributedError;
+
+		Context(Run<?, ?> run, FilePath workspace, Launcher launcher, 
+				TaskListener listener, EnvVars env) {
+			this.run = run;
+			this.workspace = workspace;
+			this.launcher = launcher;
+			this.listener = listener;
+			this.env = env;
+			//batch files need the percent sign escaped 
+			this.spaceCharacter = launcher.isUnix() ? "%20" : "%%20";
+		}
+
+		/**
+		 * Note that the step was aborted. 
+		 * @param results results of an interrupted iTestRT run 
+		 */
+		synchronized void aborted(List<TestCaseResult> results) {
+			if (abortedAt == 0) {
+				abortedAt = System.nanoTime();
+			}
+			partial.addAll(results);
+		}
+
+		synchronized boolean isAborted() {
+			return abortedAt != 0;
+		}
+
+		/**
+		 * @return true if the suite timeout has been reached 
+		 */
+		boolean isSuiteExpired() {
+			return suiteDeadline > 0 
+					&& System.currentTimeMillis() >= suiteDeadline;
+		}
+
+		/**
+		 * Note that an iTestRT run printed an error message. 
+		 * @param combination label of the combination run 
+		 * @param test test case running when the error was printed, null 
+		 * if it was printed after the last test case 
+		 */
+		synchronized void errorReported(String combination, String test) {
+			if (test == null) {
+				unattributedError = true;
+			} else {
+				errors.add(ReportStreamer.key(combination, test));
+			}
+		}
+
+		/**
+		 * Forget the errors of a test case that is run again, its last run 
+		 * decides. 
+		 * @param combination
+		 * @param test
+		 */
+		synchronized void rerunning(String combination, String test) {
+			errors.remove(ReportStreamer.key(combination, test));
+		}
+
+		/**
+		 * @return true if iTestRT printed an error message in the last run 
+		 * of a test case, or one not attributable to a test case 
+		 */
+		synchronized boolean isErrorReported() {
+			return unattributedError || !errors.isEmpty();
+		}
+
+		synchronized List<TestCaseResult> getPartialResults() {
+			return new ArrayList<TestCaseResult>(partial);
+		}
+
+		/**
+		 * @return milliseconds since the abort was noticed 
+		 */
+		synchronized long getAbortMillis() {
+			return TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - abortedAt);
+		}
+	}
+
+	/**
+	 * Results of the test cases of one invocation. 
+	 */
+	private static final class Outcome { 
+		private final List<TestCaseResult> results = 
+				new ArrayList<TestCaseResult>();
+		private boolean errorReported;
+
+		/**
+		 * Pair test cases with the statuses iTestRT reported for them. 
+		 * @param invocation
+		 * @param tests test cases of one iTestRT run, in order 
+		 * @param statuses reported statuses, in order 
+		 * @param durations 
+		 * @param count number of test cases to record 
+		 */
+		void add(Invocation invocation, List<String> tests, 
+				List<String> statuses, List<Long> durations, int count) {
+			String combination = invocation.combination.getLabel();
+			for (int i = 0; i < count; i++) {
+				if (i < statuses.size()) {
+					results.add(new TestCaseResult(tests.get(i), combination, 
+							statuses.get(i), durations.get(i)));
+				} else {
+					results.add(new TestCaseResult(tests.get(i), combination, 
+							TestCaseResult.STATUS_UNKNOWN, 0));
+				}
+			}
+		}
+
+		/**
+		 * @return true if no error was printed and every test case passed, 
+		 * a test case iTestRT reported no status for did not 
+		 */
+		boolean isPassed() {
+			if (errorReported) {
+				return false;
+			}
+			for (TestCaseResult result : results) {
+				if (!result.isPassed()) {
+					return false;
+				}
+			}
+			return true;
+		}
+	}
+
+	/**
+	 * One iTestRT run: a parameter combination and the test cases to run 
+	 * with it. 
+	 */
+	private static final class Invocation { 
+		private final ParameterSweep.Combination combination;
+		private final List<String> tests;
+		private final String prefix;
+
+		/**
+		 * @param combination parameters to run with 
+		 * @param tests test case URIs 
+		 * @param prefix text in front of each line copied to the build log 
+		 */
+		Invocation(ParameterSweep.Combination combination, List<String> tests, 
+				String prefix) {
+			this.combination = combination;
+			this.tests = tests;
+			this.prefix = prefix;
+		}
+	}
+
+	/**
+	 * Determine if relative or absolute workspace path was provided. 
+	 * @param x
+	 */
+	private String parseWorkspace(final Context x) { 
+
+        String front = String.valueOf(x.workspace);
+
+        if (workspace.equals(VAR_WORKSPACE)) {
+            return front;
+        } else if (workspace.startsWith(VAR_WORKSPACE)) {
+            return String.format("%s%s", front, this.workspace.replace(VAR_WORKSPACE, ""));
+        } else {
+            return this.workspace;
+		}
+	}
+
+	/**
+	 * Prepare workspace to generate Spirent iTest test reports. 
+	 * @param x
+	 * @return true if successful 
+	 */
+	private boolean canInitializeReport(final Context x, 
+			final ParameterSweep sweep) { 
+
+		FilePath test = x.workspace;
+		String buildID = x.run.getId(); //to set up build folders 
+
+		try {
+			//create directory to store report (no harm if already exists) 
+			String reportPath = "jenkins_test_reports_" + buildID + "/";
+			test.child(reportPath).mkdirs();
+			if (sweep.isSweep()) {
+				//one sub directory per combination, substituted in commandFor 
+				for (ParameterSweep.Combination c : sweep.getCombinations()) {
+					test.child(reportPath + c.getDirectoryName()).mkdirs();
+				}
+				reportPath += TOKEN_COMBINATION + "/";
+			}
+			x.iTestCommand += " --report " + test.toURI() + reportPath 
+					+ "{tcfilename}.html";
+		} catch (Exception e) {
+			e.printStackTrace();
+			return BUILD_FAILURE; 
+		} 
+
+		addTestReportDatabaseOptions(x); 
+		return BUILD_SUCCESS; 
+	}
+
+	/**
+	 * Report of every test case in every combination. 
+	 * @param x
+	 * @param sweep
+	 * @return reports by {@link ReportStreamer#key} 
+	 */
+	private Map<String, Report> reportTargets(final Context x, 
+			final ParameterSweep sweep) { 
+
+        String safeWorkspacePath = String.valueOf(x.workspace).replaceAll("\\\\", "/");
+		String buildID = x.run.getId(); //to set up build folders 
+        String displayName = "Spirent iTest Report"; //name of display link 
+        String reportDir = safeWorkspacePath + "/jenkins_test_reports_" + buildID; //one dir per build 
+        Map<String, Report> targets = new LinkedHashMap<String, Report>();
+
+		for (ParameterSweep.Combination c : sweep.getCombinations()) { 
+			String dir = reportDir;
+			String suffix = "";
+			if (sweep.isSweep()) { 
+				dir += "/" + c.getDirectoryName();
+				suffix = "-" + c.getDirectoryName();
+			}
+			Set<String> done = x.resumed.get(c.getLabel());
+			for (String s : x.testCaseNames) { 
+				String testcaseName = s.substring(s.lastIndexOf("/") + 1, 
+						s.lastIndexOf(".")); 
+				String report = displayName + "-" + testcaseName + suffix;
+				String testDir = dir;
+				if (done != null && done.contains(s)) { 
+					//report was generated by the resumed build 
+					testDir = dir.replace("jenkins_test_reports_" + buildID, 
+							"jenkins_test_reports_" + x.resumedBuildId);
+				}
+				targets.put(ReportStreamer.key(c.getLabel(), s), new Report(
+						report, testDir, testcaseName + ".html", true, true)); 
+			}
+		}
+		return targets; 
+	}
+
+	/**
+	 * Publish HTML reports in Jenkins. Reports already published while the 
+	 * test cases ran only get the files they share with other reports. 
+	 * @param x
+	 * @return true if successful
+	 */
+	private boolean canFinalizeReport(final Context x, 
+			final ParameterSweep sweep) { 
+
+		try { 
+			Set<String> streamed = x.reports == null 
+					? Collections.<String>emptySet() : x.reports.finish(); 
+			List<Report> remaining = new ArrayList<Report>();
+			List<Report> published = new ArrayList<Report>();
+			for (Map.Entry<String, Report> target 
+					: reportTargets(x, sweep).entrySet()) { 
+				if (streamed.contains(target.getKey())) { 
+					published.add(target.getValue()); 
+				} else { 
+					remaining.add(target.getValue()); 
+				}
+			}
+			if (!published.isEmpty()) { 
+				x.listener.getLogger().println(String.format("%d reports "
+						+ "published during the run", published.size())); 
+				ReportPublisher publisher = new ReportPublisher(published);
+				publisher.setTimeline(x.timeline, x.step);
+				publisher.publish(x.run, x.workspace, x.listener, "**/*", 
+						"**/*.html", false); 
+			}
+			if (!remaining.isEmpty()) { 
+				ReportPublisher publisher = new ReportPublisher(remaining);
+				publisher.setTimeline(x.timeline, x.step);
+				publisher.perform(x.run, x.workspace, x.listener); 
+			}
+		} catch (InterruptedException e) {
+			e.printStackTrace();
+			return BUILD_FAILURE; 
+		} 
+
+		return BUILD_SUCCESS; 
+	}
+
+	/**
+	 * Determine if all test cases passed in the end, after reruns. 
+	 * @param results final outcome of each test case 
+	 * @return true if every test case passed 
+	 */
+	private static boolean testPassed(final List<TestCaseResult> results) { 
+		for (TestCaseResult result : results) { 
+			if (!result.isPassed()) { 
+				return false; 
+			}
+		}
+		return true; 
+	}
+
+	/**
+	 * Determine if the watchdog stopped any test case. 
+	 * @param results 
+	 * @return true if a test case timed out or was not run 
+	 */
+	private static boolean timedOut(final List<TestCaseResult> results) { 
+		for (TestCaseResult result : results) { 
+			if (TestCaseResult.STATUS_TIMED_OUT.equals(result.getStatus()) 
+					|| TestCaseResult.STATUS_NOT_RUN.equals(result.getStatus())) { 
+				return true; 
+			}
+		}
+		return false; 
+	}
+
+	/**
+	 * Error messages generated by iTestRT that fail the build. 
+	 * @param line trimmed line of output 
+	 * @return true if the line reports a failure 
+	 */
+	static boolean isFailureMessage(final String line) { 
+		return line.startsWith("Error") 
+				|| line.contains("cannot find the path") 
+				|| line.contains("valid directory") 
+				|| line.contains("Failed to generate report"); 
+	}
+
+	/**
+	 * Generate iTAR files using iTestCLI. 
+	 * 
+	 * @param x
+	 * @param path iTest workspace to export 
+	 * @param target iTAR file to create 
+	 * @return true if the iTAR file was created 
+	 */
+    private boolean canGenerateITARFile(final Context x, 
+			final String path, final FilePath target) { 
 
-		ITest.Descriptor global = new ITest.Descriptor();  
-        testCaseNames = new ArrayList<String>();
-        if (global.getRtPath().isEmpty()) {
-            this.itestrt = "itestrt";
-        } else if (global.getRtPath().contains(" ")) {
-            this.itestrt = String.format("\"%s\"", global.getRtPath());
-        } else {
-            itestrt = global.getRtPath();
-        }
+        String generateITAR = String.format("%s %s \"%s\" %s \"%s\"", x.itestrt, this.PARAM_ITAR, path, this.PARAM_EXPORTITAR, target.getRemote());
 
-		processBuildWorkspace(build); 
+		TestOutputMonitor monitor = executeMonitored(generateITAR, "", x); 
+		try { 
+			return monitor != null && !monitor.isErrorReported() 
+					&& target.exists(); 
+		} catch (Exception e) { 
+			e.printStackTrace();
+			return BUILD_FAILURE; 
+		}
+	}
 
-        //        if (!canGenerateITARFile(build, launcher, listener)) {
-        //            return BUILD_FAILURE;
-        //        }
+	/**
+	 * Find or create the iTAR export of the current workspace content in the 
+	 * agent's iTAR cache. 
+	 * 
+	 * @param x
+	 * @param global
+	 * @return path of the iTAR file to run from, or null on failure 
+	 */
+	private String prepareCachedItar(final Context x, 
+			final GlobalConfig global) { 
 
-		String licenseServerURI = global.lsIPAddress; 
-		if(!global.lsPort.isEmpty()) { 
-			licenseServerURI += ":" + global.lsPort; 
+		String source = parseWorkspace(x); 
+		if (source.isEmpty()) { 
+			source = x.workspace.getRemote(); 
 		}
+		Computer computer = x.workspace.toComputer(); 
+		Node node = computer != null ? computer.getNode() : null; 
+		FilePath cacheDir = node != null && node.getRootPath() != null 
+				? node.getRootPath().child(ITAR_CACHE) 
+				: x.workspace.child("." + ITAR_CACHE); 
 
-        iTestCommand = String.format("%s %s %s %s \"%s\"", this.itestrt, this.PARAM_LICENSE_SERVER, licenseServerURI, this.PARAM_ITAR, parseWorkspace(build));
-
-		addTestExecutionOptions(); 
-		parseTestCases(build); 
+		try { 
+			long start = System.currentTimeMillis(); 
+			String hash = cacheDir.act(new ItarCache.Digest(source)); 
+			FilePath cached = cacheDir.child(hash + ItarCache.EXTENSION); 
+			if (cached.exists()) { 
+				//mark as recently used for eviction 
+				cached.touch(System.currentTimeMillis()); 
+				x.listener.getLogger().println(String.format("iTAR cache hit: "
+						+ "%s (%d ms)", cached.getRemote(), 
+						System.currentTimeMillis() - start)); 
+				return cached.getRemote(); 
+			}
 
-		if (!testReportRequired) { 
-            if (executeCommand(iTestCommand, build, launcher, listener) && testPassed(build)) {
-                return BUILD_SUCCESS;
+			x.listener.getLogger().println("iTAR cache miss: exporting " 
+					+ source); 
+			FilePath partial = cacheDir.createTempFile(hash, 
+					ItarCache.EXTENSION); 
+			partial.delete(); 
+			if (!canGenerateITARFile(x, source, 
+					partial)) { 
+				x.listener.error("iTAR export of " + source + " failed"); 
+				partial.delete(); 
+				return null; 
 			}
-		} else { 
-            if (canInitializeReport(build, launcher, listener) //
-                    && executeCommand(iTestCommand, build, launcher, listener) //
-                    && canFinalizeReport(build, launcher, listener) //
-                    && testPassed(build)) {
-                return BUILD_SUCCESS;
+			if (cached.exists()) { 
+				//exported concurrently by another build 
+				partial.delete(); 
+			} else { 
+				partial.renameTo(cached); 
 			}
-		}
 
-        return BUILD_FAILURE;
+			long[] usage = cacheDir.act(new ItarCache.Evict(
+					global.getItarCacheSize() * 1024L * 1024L, 
+					cached.getName())); 
+			x.listener.getLogger().println(String.format("iTAR exported to %s "
+					+ "(%d ms), cache holds %d files, %d MB, %d evicted", 
+					cached.getRemote(), System.currentTimeMillis() - start, 
+					usage[1], usage[2] / (1024 * 1024), usage[0])); 
+			return cached.getRemote(); 
+		} catch (IOException e) { 
+			e.printStackTrace(x.listener.error("iTAR cache failure")); 
+		} catch (InterruptedException e) { 
+			x.listener.getLogger().println("iTAR export interrupted"); 
+		}
+		return null; 
 	}
 
 	/**
-	 * Expand environment variables for ${WORKSPACE}. 
-	 * @param build
-	 * @param src 
+	 * Expand test case patterns such as project://regression/**{@literal /}*.fftc 
+	 * by searching the iTest workspace on the agent. Matches take the place of 
+	 * the first pattern in the list, other entries keep their order. 
+	 * @param x
+	 * @return test case entries, or null if the search failed or found no 
+	 * test case 
 	 */
-	private void processBuildWorkspace(AbstractBuild<?, ?> build) {
-
-        String front = String.valueOf(build.getWorkspace());
-
-        if (!testbed.isEmpty()) {
-            if (testbed.startsWith(VAR_WORKSPACE)) {
-                String back = testbed.replace(VAR_WORKSPACE, "");
-                safeTestbed = front + back;
-            } else if (!testbed.startsWith(URI_PROJECT) && !testbed.startsWith(URI_FILE)) {
-                safeTestbed = String.format("%s%s", URI_FILE, this.testbed);
-            } else {
-                safeTestbed = testbed;
-            }
-            this.safeTestbed = this.safeTestbed.replace(" ", SPACE_CHARACTER);
-        }
+	private List<String> discoverTestCases(final Context x) { 
+
+		List<String> entries = new ArrayList<String>();
+		List<String> patterns = new ArrayList<String>();
+		int position = -1;
+		for (String testCase : splitList(testcases)) {
+			if (!TestCaseDiscovery.isPattern(testCase)) {
+				entries.add(testCase);
+				continue;
+			}
+			if (position < 0) {
+				position = entries.size();
+			}
+			patterns.add(testCase.replace('\\', '/'));
+		}
+		if (patterns.isEmpty()) {
+			return entries;
+		}
 
-        if (!paramFile.isEmpty()) {
-            if (paramFile.startsWith(VAR_WORKSPACE)) {
-                String back = paramFile.replace(VAR_WORKSPACE, "");
-                safeParamFile = front + back;
-            } else if (!paramFile.startsWith(URI_PROJECT) && !paramFile.startsWith(URI_FILE)) {
-                safeParamFile = String.format("%s%s", URI_FILE, this.paramFile);
-            } else {
-                safeParamFile = paramFile;
-            }
-            this.safeParamFile = this.safeParamFile.replace(" ", SPACE_CHARACTER);
-        }
+		try {
+			TestCaseDiscovery.Result found = x.workspace.act(
+					new TestCaseDiscovery(parseWorkspace(x), patterns, 
+							splitList(getTestcaseExcludes()), 
+							splitList(getTestcaseTags())));
+			x.listener.getLogger().println(String.format("Found %d test cases "
+					+ "matching %s (%d directories listed, %d from index)", 
+					found.getTestCases().size(), patterns, 
+					found.getDirectoriesListed(), 
+					found.getDirectoriesReused()));
+			if (found.getTestCases().isEmpty()) {
+				//most likely a typo, do not pass without running anything 
+				x.listener.error("No test cases match " + patterns);
+				return null;
+			}
+			entries.addAll(position, found.getTestCases());
+			return entries;
+		} catch (IOException e) {
+			e.printStackTrace(x.listener.error("Test case discovery failed"));
+		} catch (InterruptedException e) {
+			x.listener.getLogger().println("Test case discovery interrupted");
+		}
+		return null;
 	}
 
 	/**
-	 * Run iTestRT commands. 
-	 * 
-	 * @param command
-	 * @param build
-	 * @param launcher
-	 * @param listener
+	 * Fingerprint each test case with its testbed, parameter file and 
+	 * parameters. 
+	 * @param x
+	 * @param entries test case entries 
+	 * @return fingerprint by entry, or null if they could not be computed 
 	 */
-	private boolean executeCommand(final String command, final AbstractBuild<?, ?> build, 
-			final Launcher launcher, final BuildListener listener) { 
+	private Map<String, String> fingerprintTestCases(
+			final Context x, 
+			final List<String> entries) { 
 
-		String uniformPathSeparators = command.replaceAll("\\\\", "/"); 
-		CommandInterpreter runner = 
-                getCommandInterpreter(launcher, uniformPathSeparators);
+		List<String> sharedInputs = new ArrayList<String>();
+		if (!testbed.isEmpty()) {
+			sharedInputs.add(testbed);
+		}
+		if (!paramFile.isEmpty()) {
+			sharedInputs.add(paramFile);
+		}
 		try {
-			runner.perform(build, launcher, listener);
-            return true;
+			return x.workspace.act(new TestCaseFingerprint(
+					parseWorkspace(x), entries, sharedInputs, params));
+		} catch (IOException e) {
+			e.printStackTrace(x.listener.error("Cannot fingerprint test cases, "
+					+ "running all of them"));
 		} catch (InterruptedException e) {
-			e.printStackTrace();
-            return false;
+			Thread.currentThread().interrupt();
 		}
-
+		return null;
 	}
 
 	/**
-	 * Determine if relative or absolute workspace path was provided. 
-	 * @param build 
+	 * Leave out test cases whose fingerprint passed in an earlier build, 
+	 * reusing that result for every parameter combination. 
+	 * @param x
+	 * @param sweep
+	 * @param entries test case entries 
+	 * @param fingerprints fingerprint by entry 
+	 * @param results receives the reused results 
+	 * @return entries that still have to run 
 	 */
-	private String parseWorkspace(final AbstractBuild<?, ?> build) { 
+	private List<String> skipUnchangedTestCases(final Context x, 
+			final ParameterSweep sweep, final List<String> entries, 
+			final Map<String, String> fingerprints, 
+			final List<TestCaseResult> results) { 
 
-        String front = String.valueOf(build.getWorkspace());
-
-        if (workspace.equals(VAR_WORKSPACE)) {
-            return front;
-        } else if (workspace.startsWith(VAR_WORKSPACE)) {
-            return String.format("%s%s", front, this.workspace.replace(VAR_WORKSPACE, ""));
-        } else {
-            return this.workspace;
+		Map<String, long[]> passed;
+		try {
+			passed = new ResultCache(x.run.getParent().getRootDir())
+					.lookup(fingerprints.values());
+		} catch (IOException e) {
+			e.printStackTrace(x.listener.error("Cannot read cached results, "
+					+ "running all test cases"));
+			return entries;
 		}
-	}
 
-	private String expandEnvironmentVariables(String src){
-		String res = src;
-		Map<String, String> env = System.getenv();
-        for (Entry<String, String> iter : env.entrySet()) {
-            res = res.replace("\\$" + iter.getKey(), iter.getValue());
+		String front = String.valueOf(x.workspace);
+		List<ParameterSweep.Combination> combinations = 
+				sweep.getCombinations();
+		List<String> remaining = new ArrayList<String>();
+		for (String entry : entries) {
+			long[] cached = passed.get(fingerprints.get(entry));
+			String uri = testCaseUri(entry, front);
+			if (cached == null || uri == null) {
+				remaining.add(entry);
+				continue;
+			}
+			//recorded under the URI and combinations of executed results 
+			x.testCaseEntries.put(uri, entry);
+			x.listener.getLogger().println(String.format("  [cached from #%d] "
+					+ "%s", cached[0], uri));
+			for (ParameterSweep.Combination c : combinations) {
+				//the cached duration is the sum over all combinations 
+				results.add(new TestCaseResult(uri, c.getLabel(), "Pass", 
+						cached[1] / combinations.size(), (int) cached[0]));
+			}
 		}
-		return res;
+		x.listener.getLogger().println(String.format("Skipped %d of %d test "
+				+ "cases unchanged since they passed", 
+				entries.size() - remaining.size(), entries.size()));
+		return remaining;
 	}
 
 	/**
-	 * Prepare workspace to generate Spirent iTest test reports. 
-	 * @param build
-	 * @param launcher
-	 * @param listener
-	 * @return true if successful 
+	 * Remember which fingerprints passed in this build. A test case passes 
+	 * only if it passed in every parameter combination. 
+	 * @param x
+	 * @param fingerprints fingerprint by entry 
+	 * @param results results of this build 
 	 */
-	private boolean canInitializeReport(final AbstractBuild<?, ?> build, 
-			final Launcher launcher, final BuildListener listener) { 
-
-		FilePath test = build.getWorkspace();
-		String test2 = "" + test; //convert FilePath to String 
-		String safeWorkspacePath = expandEnvironmentVariables(
-				test2.replaceAll("\\\\", "/")); 
-		String buildID = build.getId(); //to set up build folders 
-
-		//create directory to store report (no harm if already exists) 
-		String createTestReportDir = "pushd . & cd " + safeWorkspacePath 
-				+ " & mkdir jenkins_test_reports_" + buildID + " & popd";
+	private void recordResults(final Context x, 
+			final Map<String, String> fingerprints, 
+			final List<TestCaseResult> results) { 
+
+		Map<String, Long> durations = new HashMap<String, Long>();
+		Set<String> failed = new HashSet<String>();
+		for (TestCaseResult result : results) {
+			if (result.isCached()) {
+				continue;
+			}
+			Long duration = durations.get(result.getTestCase());
+			durations.put(result.getTestCase(), result.getDuration() 
+					+ (duration == null ? 0 : duration));
+			if (!result.isPassed() || result.isFlaky()) {
+				failed.add(result.getTestCase());
+			}
+		}
 
-		if (!executeCommand(createTestReportDir, build, launcher, listener)){ 
-			return BUILD_FAILURE; 
+		Map<String, Long> passedFingerprints = new HashMap<String, Long>();
+		Set<String> failedFingerprints = new HashSet<String>();
+		//test cases may have been reordered, pair them by URI 
+		for (String name : x.testCaseNames) {
+			String fingerprint = fingerprints.get(x.testCaseEntries.get(name));
+			if (fingerprint == null) {
+				continue;
+			}
+			if (durations.containsKey(name) && !failed.contains(name)) {
+				passedFingerprints.put(fingerprint, durations.get(name));
+			} else {
+				failedFingerprints.add(fingerprint);
+			}
 		}
 
 		try {
-			iTestCommand += " --report " + test.toURI()
-					+ "jenkins_test_reports_" + buildID 
-					+ "/{tcfilename}.html";
-		} catch (Exception e) {
-			e.printStackTrace();
-			return BUILD_FAILURE; 
-		} 
-
-		addTestReportDatabaseOptions(); 
-		return BUILD_SUCCESS; 
+			new ResultCache(x.run.getParent().getRootDir()).update(
+					passedFingerprints, failedFingerprints, x.run.getNumber());
+		} catch (IOException e) {
+			e.printStackTrace(x.listener.error("Cannot record results for "
+					+ "unchanged test case detection"));
+		}
 	}
 
 	/**
-	 * Publish HTML reports in Jenkins. 
-	 * @param build
-	 * @param launcher
-	 * @param listener
-	 * @return true if successful
+	 * Expand build parameters in {@link #getResumeFrom()}. 
+	 * @param x
+	 * @return the build number to resume from, empty if none is set or the 
+	 * parameter it names is empty or undefined 
 	 */
-	private boolean canFinalizeReport(final AbstractBuild<?, ?> build, 
-			final Launcher launcher, final BuildListener listener) { 
-
-        String safeWorkspacePath = String.valueOf(build.getWorkspace()).replaceAll("\\\\", "/");
-		String buildID = build.getId(); //to set up build folders 
-        String displayName = "Spirent iTest Report"; //name of display link 
-        String reportDir = safeWorkspacePath + "/jenkins_test_reports_" + buildID; //one dir per build 
-        List<Report> list = new ArrayList<Report>();
-
-		for (String s : testCaseNames) { 
-			String testcaseName = s.substring(s.lastIndexOf("/") + 1, 
-					s.lastIndexOf(".")); 
-            String report = displayName + "-" + testcaseName;
-			list.add(new Report(report, reportDir, 
-					testcaseName + ".html", true, true)); 
+	private String resumeFromBuild(final Context x) { 
+		String number = getResumeFrom().trim();
+		if (number.isEmpty()) {
+			return number;
 		}
-
-		ReportPublisher publisher = new ReportPublisher(list);
-
-		try { 
-			publisher.perform(build, launcher, listener); 
-		} catch (InterruptedException e) {
-			e.printStackTrace();
-			return BUILD_FAILURE; 
-		} 
-
-		return BUILD_SUCCESS; 
+		number = x.env.expand(number).trim();
+		if (number.startsWith("#")) {
+			number = number.substring(1).trim();
+		}
+		//undefined parameters are left unexpanded 
+		return number.startsWith("$") ? "" : number;
 	}
 
 	/**
-	 * Check console output for any error messages before proceeding. 
-	 * @param build
-	 * @param launcher
-	 * @param listener
+	 * Reuse the test cases completed by the build named in 
+	 * {@link #getResumeFrom()}, copying them into this build's checkpoint 
+	 * so an interrupted resume can itself be resumed. 
+	 * @param x
+	 * @param number build number, see {@link #resumeFromBuild} 
+	 * @param sweep
+	 * @param results receives the reused results 
+	 * @return false if the build to resume from has no checkpoint 
 	 */
-	private boolean consoleOutputIsValid(final AbstractBuild<?, ?> build) {  
-		File test = build.getLogFile();
-		Scanner scanner = null;
+	private boolean resumeFromCheckpoint(final Context x, final String number, 
+			final ParameterSweep sweep, final List<TestCaseResult> results) { 
+
+		Run<?, ?> previous;
 		try {
-            scanner = new Scanner(test, "UTF-8");
-			while (scanner.hasNextLine()) { 
-				String nextLine = scanner.nextLine(); 
-				//error messages generated by iTestCLI and iTestRT 
-				if (nextLine.contains("Error") 
-						|| nextLine.contains("cannot find the path")
-						|| nextLine.contains("valid directory")
-						|| nextLine.contains("No project to be exported")
-						|| nextLine.contains("Failed to generate report")) { 
-					return false; 
-				}
-			} 
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-            return false;
-		} finally { 
-            if (scanner != null)
-                scanner.close();
+			previous = x.run.getParent().getBuildByNumber(
+					Integer.parseInt(number));
+		} catch (NumberFormatException e) {
+			x.listener.error("Resume from build is not a build number: " 
+					+ number);
+			return BUILD_FAILURE;
+		}
+		Checkpoint completed = previous == null ? null 
+				: new Checkpoint(previous.getRootDir());
+		if (completed == null || !completed.exists()) {
+			x.listener.error("Build #" + number + " has no iTest checkpoint "
+					+ "to resume from");
+			return BUILD_FAILURE;
 		}
 
-		return true; 
+		Set<String> labels = new HashSet<String>();
+		for (ParameterSweep.Combination c : sweep.getCombinations()) {
+			labels.add(c.getLabel());
+		}
+		Set<String> names = new HashSet<String>(x.testCaseNames);
+		int reused = 0;
+		try {
+			for (TestCaseResult result : completed.load(previous.getNumber())) {
+				if (!names.contains(result.getTestCase()) 
+						|| !labels.contains(result.getCombination())) {
+					continue;
+				}
+				Set<String> done = x.resumed.get(result.getCombination());
+				if (done == null) {
+					done = new HashSet<String>();
+					x.resumed.put(result.getCombination(), done);
+				}
+				done.add(result.getTestCase());
+				results.add(result);
+				x.checkpoint.record(result);
+				reused++;
+			}
+		} catch (IOException e) {
+			e.printStackTrace(x.listener.error("Cannot read the checkpoint of "
+					+ "build #" + number));
+			return BUILD_FAILURE;
+		}
+		x.resumedBuildId = previous.getId();
+		x.listener.getLogger().println(String.format("Resuming build #%s: %d "
+				+ "completed test case runs reused", number, reused));
+		return BUILD_SUCCESS;
 	}
 
 	/**
-	 * Determine if all any test cases have failed. 
-	 * @param build
-	 * @return
+	 * @param x
+	 * @param combination
+	 * @return test cases of a combination that were not completed by the 
+	 * build being resumed 
 	 */
-	private boolean testPassed(final AbstractBuild<?, ?> build) {  
-		File test = build.getLogFile();
-		Scanner scanner = null;
-        Pattern p = Pattern.compile(PATTERN_EXECUTION);
-        Matcher m = null;
-		try {
-            scanner = new Scanner(test, "UTF-8");
-			while (scanner.hasNextLine()) { 
-                String nextLine = scanner.nextLine().trim();
-                if (nextLine.startsWith("Error") //
-                        || nextLine.contains("cannot find the path") //
-                        || nextLine.contains("valid directory") //
-                        || nextLine.contains("Failed to generate report")) {
-                    return false;
-                }
-                m = p.matcher(nextLine);
-                if (m.find()) {
-                    if (!m.group(1).equalsIgnoreCase("Pass")) {
-                        return false;
-                    }
-                }
-            }
-            return true;
-		} catch (FileNotFoundException e) {
-			e.printStackTrace();
-		} finally { 
-            if (scanner != null)
-                scanner.close();
+	private List<String> pending(final Context x, 
+			final ParameterSweep.Combination combination) { 
+		Set<String> done = x.resumed.get(combination.getLabel());
+		if (done == null) {
+			return x.testCaseNames;
+		}
+		List<String> tests = new ArrayList<String>();
+		for (String test : x.testCaseNames) {
+			if (!done.contains(test)) {
+				tests.add(test);
+			}
 		}
-        return false;
+		return tests;
 	}
 
 	/**
-	 * Generate iTAR files using iTestCLI. 
-	 * 
-	 * @param build
-	 * @param launcher
-	 * @param listener
+	 * Tell the user how to run the rest of an interrupted build. 
+	 * @param x
 	 */
-    private boolean canGenerateITARFile(final AbstractBuild<?, ?> build, 
-			final Launcher launcher, final BuildListener listener) { 
-
-		String path = parseWorkspace(build); 
-        String generateITAR = String.format("%s %s \"%s\" %s", this.itestrt, this.PARAM_ITAR, path, this.PARAM_EXPORTITAR);
-
-        CommandInterpreter runner = 
-				getCommandInterpreter(launcher, generateITAR); 
-
-		try { 
-			runner.perform(build, launcher, listener);
-		} catch (Exception e) { 
-			e.printStackTrace();
+	private void logResumeHint(final Context x) { 
+		if (x.checkpoint.exists()) {
+			x.listener.getLogger().println(String.format("Completed test cases "
+					+ "were checkpointed, set Resume from build to %d to run "
+					+ "only the rest", x.run.getNumber()));
 		}
-
-		return consoleOutputIsValid(build); 
 	}
 
 	/**
-	 * Each test case must be preceded by --test option. 
+	 * Split a comma separated option, dropping blank entries. 
+	 * @param value
+	 * @return trimmed entries 
 	 */
-	private void parseTestCases(final AbstractBuild<?, ?> build) { 
+	private static List<String> splitList(final String value) { 
+		List<String> entries = new ArrayList<String>();
+		if (value != null) {
+			for (String entry : value.split(",")) {
+				if (!entry.trim().isEmpty()) {
+					entries.add(entry.trim());
+				}
+			}
+		}
+		return entries;
+	}
 
-        String[] multipleTestCases = testcases.split(",");
-        String front = String.valueOf(build.getWorkspace());
-		String back = null, temp = null; 
+	/**
+	 * Resolve test case entries to the URIs passed to iTestRT. 
+	 */
+	private void parseTestCases(final Context x, 
+			final List<String> multipleTestCases) { 
 
+        String front = String.valueOf(x.workspace);
 		for (String testCase: multipleTestCases) {
-            if (testCase.trim().isEmpty()) {
-                continue;
-            }
-            testCase = testCase.trim();
-            if (testCase.startsWith(VAR_WORKSPACE)) {
-                back = testCase.replace(VAR_WORKSPACE, "");
-                temp = String.format("%s%s%s", URI_FILE, front, back);
-            } else if (!testCase.startsWith(URI_PROJECT) && !testCase.startsWith(URI_FILE)) {
-                temp = String.format("%s%s", URI_FILE, testCase);
-            } else {
-                temp = testCase;
+			String uri = testCaseUri(testCase, front);
+			if (uri != null) {
+				x.testCaseNames.add(uri);
+				x.testCaseEntries.put(uri, testCase);
 			}
-            testCaseNames.add(temp);
-            temp = temp.replace(" ", SPACE_CHARACTER);
-            iTestCommand += String.format(" %s %s", this.PARAM_TEST, temp);
 		}
 	}
 
+	/**
+	 * Resolve a test case entry to the URI passed to iTestRT. 
+	 * @param testCase entry of the test case list 
+	 * @param front path of the build workspace 
+	 * @return the URI, or null for a blank entry 
+	 */
+	static String testCaseUri(String testCase, final String front) { 
+		String back = null; 
+		if (testCase.trim().isEmpty()) {
+			return null;
+		}
+		testCase = testCase.trim();
+		if (testCase.startsWith(VAR_WORKSPACE)) {
+			back = testCase.replace(VAR_WORKSPACE, "");
+			return String.format("%s%s%s", URI_FILE, front, back);
+		} else if (!testCase.startsWith(URI_PROJECT) && !testCase.startsWith(URI_FILE)) {
+			return String.format("%s%s", URI_FILE, testCase);
+		}
+		return testCase;
+	}
+
+	/**
+	 * Run the test cases most likely to fail first. 
+	 * @param x
+	 */
+	private void orderTestCases(final Context x) { 
+		FailureOrdering ordering = FailureOrdering.of(x.run); 
+		List<String> ordered = ordering.order(x.testCaseNames); 
+		x.testCaseNames.clear(); 
+		x.testCaseNames.addAll(ordered); 
+		ordering.print(ordered, x.listener.getLogger()); 
+	}
+
 	/**
 	 * Parse test execution options. 
+	 * @param x
 	 */
-	private void addTestExecutionOptions() { 
+	private void addTestExecutionOptions(final Context x) { 
 		if (!testbed.isEmpty()) { 
-            iTestCommand += String.format(" %s \"%s\"", this.PARAM_TESTBED, this.safeTestbed);
+            x.iTestCommand += String.format(" %s \"%s\"", this.PARAM_TESTBED, x.safeTestbed);
 		}
 
-		if (!params.isEmpty()) { 
-            String[] multipleParams = params.split(",");
-			for(String param : multipleParams) { 
-                iTestCommand += String.format(" --param \"%s\"", param.trim());
-			}
+		if (!paramFile.isEmpty()) { 
+            x.iTestCommand += String.format(" %s \"%s\"", this.PARAM_PARAMETER, x.safeParamFile);
 		}
+	}
 
-		if (!paramFile.isEmpty()) { 
-            iTestCommand += String.format(" %s \"%s\"", this.PARAM_PARAMETER, this.safeParamFile);
+	/**
+	 * Complete the command for one parameter combination and set of test 
+	 * cases. Each test case must be preceded by --test option. 
+	 * @param x
+	 * @param combination 
+	 * @param tests test case URIs 
+	 * @return iTestRT command line 
+	 */
+	private String commandFor(final Context x, 
+			final ParameterSweep.Combination combination, 
+			final List<String> tests) { 
+		return commandFor(x.iTestCommand, combination, tests, 
+				x.spaceCharacter); 
+	}
+
+	/**
+	 * @param base iTestRT command without parameters and test cases 
+	 * @param combination 
+	 * @param tests test case URIs 
+	 * @param spaceCharacter replaces spaces in test case URIs 
+	 * @return iTestRT command line 
+	 */
+	static String commandFor(final String base, 
+			final ParameterSweep.Combination combination, 
+			final List<String> tests, final String spaceCharacter) { 
+		StringBuilder command = new StringBuilder(base.replace(
+				TOKEN_COMBINATION, combination.getDirectoryName())); 
+		for (String param : combination.getParams()) { 
+			command.append(String.format(" --param \"%s\"", param));
+		}
+		for (String test : tests) { 
+			command.append(String.format(" %s %s", PARAM_TEST, 
+					test.replace(" ", spaceCharacter)));
 		}
+		return command.toString(); 
 	}
 
 	/**
 	 * Parse test report database options. 
+	 * @param x
 	 */
-	private void addTestReportDatabaseOptions() { 
+	private void addTestReportDatabaseOptions(final Context x) { 
 
-		//to access static nested class fields
-		ITest.Descriptor global = new Descriptor();   
+		GlobalConfig global = x.global;   
 
-		if (!global.dbUsername.isEmpty()) { 
-			iTestCommand += " --trdb.user " + global.dbUsername; 
-			iTestCommand += " --trdb.password " + global.dbPassword; 
+		//results are uploaded by the plugin, see ResultUploader 
+		if (global.isUploadResults()) { 
+			return; 
+		}
+
+		if (!global.getDbUsername().isEmpty()) { 
+			x.iTestCommand += " --trdb.user " + global.getDbUsername(); 
+			x.iTestCommand += " --trdb.password " + global.getDbPassword(); 
 
 			if(!dbCustomTag.isEmpty()) { 
-				iTestCommand += " --tag " + dbCustomTag; 
+				x.iTestCommand += " --tag " + dbCustomTag; 
 			}
 
-			iTestCommand += " --host " + global.lsIPAddress; 
+			x.iTestCommand += " --host " + global.getLsIPAddress(); 
 
-			if(!global.dbURI.isEmpty()) { 
-				iTestCommand += " --uri " + global.dbURI; 
+			if(!global.getDbURI().isEmpty()) { 
+				x.iTestCommand += " --uri " + global.getDbURI(); 
 				return; 
 			}
 
-			iTestCommand += " --catalog " + global.dbName; 
-			iTestCommand += " --dbtype " + global.dbType; 
-			iTestCommand += " --ipaddr " + global.dbIPAddress; 
-			iTestCommand += " --trdb.port " + global.dbPort; 
+			x.iTestCommand += " --catalog " + global.getDbName(); 
+			x.iTestCommand += " --dbtype " + global.getDbType(); 
+			x.iTestCommand += " --ipaddr " + global.getDbIPAddress(); 
+			x.iTestCommand += " --trdb.port " + global.getDbPort(); 
 		}
 	}
 
-	/**
-	 * Return correct CommandInterpreter based on OS  
-	 * 
-	 * @param launcher
-	 * @param script
-	 * @return CommandInterpreter
-	 */
-	private CommandInterpreter getCommandInterpreter(final Launcher launcher,
-			final String script) {
-		if (launcher.isUnix())
-			return new Shell(script);
-		else
-			return new BatchFile(script);
-	}
-
 	@Extension
 	public static final class Descriptor extends BuildStepDescriptor<Builder> {
 
+		private static final int DEFAULT_ITAR_CACHE_SIZE = 2048;
+		private static final Set<String> loadedDrivers = new HashSet<String>();
+
 		/**
 		 * @since 1.0
 		 */
@@ -574,11 +2583,23 @@ public class ITest extends CommandInterpreter {
 		 * @since 1.0
 		 */
 		private String dbPort;
+		/**
+		 * @since 1.1.2
+		 */
+		private String itarCacheSize;
+		/**
+		 * @since 1.1.2
+		 */
+		private boolean uploadResults;
+		/**
+		 * Settings builds read, replaced whenever a field changes. 
+		 */
+		private transient volatile GlobalConfig config = GlobalConfig.EMPTY;
 		/**
 		 * @return the rtPath
 		 */
 		public String getRtPath() {
-            return rtPath.trim();
+            return Util.fixNull(rtPath).trim();
 		}
 
 		/**
@@ -615,6 +2636,7 @@ public class ITest extends CommandInterpreter {
 		 */
 		public void setDbType(String type){ 
 			dbType = type; 
+			snapshot();
 		}
 
 		/**
@@ -652,11 +2674,31 @@ public class ITest extends CommandInterpreter {
 			return dbPort;
 		}
 
+		/**
+		 * @return the iTAR cache limit per agent in MB 
+		 */
+		public int getItarCacheSize() {
+			try {
+					return Integer.parseInt(itarCacheSize.trim());
+			} catch (Exception e) {
+				return DEFAULT_ITAR_CACHE_SIZE;
+			}
+		}
+
+		/**
+		 * @param itarCacheSize the iTAR cache limit in MB to set 
+		 */
+		public void setItarCacheSize(String itarCacheSize) {
+			this.itarCacheSize = itarCacheSize;
+			snapshot();
+		}
+
 		/**
 		 * @param rtPath the rtPath to set
 		 */
 		public void setRtPath(String rtPath) {
             this.rtPath = rtPath;
+			snapshot();
 		}
 
 		/**
@@ -664,6 +2706,7 @@ public class ITest extends CommandInterpreter {
 		 */
 		public void setLsIPAddress(String lsIPAddress) {
 			this.lsIPAddress = lsIPAddress;
+			snapshot();
 		}
 
 		/**
@@ -671,6 +2714,7 @@ public class ITest extends CommandInterpreter {
 		 */
 		public void setLsPort(String lsPort) {
 			this.lsPort = lsPort;
+			snapshot();
 		}
 
 		/**
@@ -678,6 +2722,7 @@ public class ITest extends CommandInterpreter {
 		 */
 		public void setDbName(String dbName) {
 			this.dbName = dbName;
+			snapshot();
 		}
 
 		/**
@@ -685,6 +2730,7 @@ public class ITest extends CommandInterpreter {
 		 */
 		public void setDbUsername(String dbUsername) {
 			this.dbUsername = dbUsername;
+			snapshot();
 		}
 
 		/**
@@ -692,6 +2738,7 @@ public class ITest extends CommandInterpreter {
 		 */
 		public void setDbPassword(String dbPassword) {
 			this.dbPassword = dbPassword;
+			snapshot();
 		}
 
 		/**
@@ -699,6 +2746,7 @@ public class ITest extends CommandInterpreter {
 		 */
 		public void setDbURI(String dbURI) {
 			this.dbURI = dbURI;
+			snapshot();
 		}
 
 		/**
@@ -706,6 +2754,7 @@ public class ITest extends CommandInterpreter {
 		 */
 		public void setDbIPAddress(String dbIPAddress) {
 			this.dbIPAddress = dbIPAddress;
+			snapshot();
 		}
 
 		/**
@@ -713,6 +2762,23 @@ public class ITest extends CommandInterpreter {
 		 */
 		public void setDbPort(String dbPort) {
 			this.dbPort = dbPort;
+			snapshot();
+		}
+
+		/**
+		 * @return true if the plugin uploads results to the test report 
+		 * database instead of iTestRT 
+		 */
+		public boolean isUploadResults() {
+			return uploadResults;
+		}
+
+		/**
+		 * @param uploadResults the uploadResults to set
+		 */
+		public void setUploadResults(boolean uploadResults) {
+			this.uploadResults = uploadResults;
+			snapshot();
 		}
 
 		@Override
@@ -722,6 +2788,23 @@ public class ITest extends CommandInterpreter {
 
 		public Descriptor() {
 			load();
+			snapshot();
+		}
+
+		/**
+		 * @return current settings, never null 
+		 */
+		GlobalConfig getConfig() {
+			return config;
+		}
+
+		/**
+		 * Publish the current field values to builds. 
+		 */
+		private void snapshot() {
+			config = new GlobalConfig(rtPath, lsIPAddress, lsPort, dbName, 
+					dbType, dbUsername, dbPassword, dbURI, dbIPAddress, dbPort, 
+					getItarCacheSize(), uploadResults);
 		}
 
 		@SuppressWarnings("rawtypes")
@@ -745,6 +2828,7 @@ public class ITest extends CommandInterpreter {
 			this.dbURI = dbURI;
 			this.dbIPAddress = dbIPAddress;
 			this.dbPort = dbPort;
+			snapshot();
 		}
 
 		@Override
@@ -761,12 +2845,50 @@ public class ITest extends CommandInterpreter {
 			dbPort = formData.getString("dbPort"); 
 			dbUsername = formData.getString("dbUsername"); 
 			dbPassword = formData.getString("dbPassword"); 
+			itarCacheSize = formData.optString("itarCacheSize", ""); 
+			uploadResults = formData.optBoolean("uploadResults"); 
 
 			setDbType(formData.getString("dbType")); 
 			save();
+			snapshot();
+			config.configurePool(); 
+			HealthProber.get().refresh(); 
 			return false;
 		}
 
+		public ListBoxModel doFillInstallationItems() {
+			ListBoxModel items = new ListBoxModel(); 
+			items.add(new Option("(iTestRT path of global configuration)", "")); 
+			ITestInstallation.DescriptorImpl tools = Jenkins.getInstance()
+					.getDescriptorByType(ITestInstallation.DescriptorImpl.class); 
+			if (tools != null) { 
+				for (ITestInstallation tool : tools.getInstallations()) { 
+					items.add(new Option(tool.getName(), tool.getName())); 
+				}
+			}
+			return items; 
+		}
+
+		public ListBoxModel doFillTestOrderItems() {
+			return new ListBoxModel(
+					new Option("As listed", ORDER_LISTED), 
+					new Option("Likely failures first", ORDER_FAILURES_FIRST)); 
+		}
+
+		public ListBoxModel doFillHealthCheckItems() {
+			return new ListBoxModel(
+					new Option("Ignore", HEALTH_IGNORE), 
+					new Option("Fail the build", HEALTH_FAIL), 
+					new Option("Wait until it is up", HEALTH_WAIT)); 
+		}
+
+		/**
+		 * @return latest status of the license server and database 
+		 */
+		public List<HealthProber.Status> getHealthStatuses() {
+			return HealthProber.get().getStatuses(); 
+		}
+
 		public ListBoxModel doFillDbTypeItems(){
 			return new ListBoxModel(
 					new Option("MySQL", "MySQL", dbType.equals("MySQL")),
@@ -780,7 +2902,7 @@ public class ITest extends CommandInterpreter {
 		 * the correct JDBC class driver. 
 		 * @return database type 
 		 */
-		private static String parseType(String uri) { 
+		static String parseType(String uri) { 
 			if (uri.toLowerCase().contains("mysql")) { 
 				return "mysql"; 
 			} else { 
@@ -803,32 +2925,25 @@ public class ITest extends CommandInterpreter {
 				@QueryParameter final String lsIPAddress, 
 				@QueryParameter final String lsPort) 
 						throws IOException, ServletException {
-			try {
-				//must specify license server 
-				if (lsIPAddress.isEmpty()) { 
-					return FormValidation.error("Must specify license server"); 
-				}
+			//must specify license server 
+			if (lsIPAddress.isEmpty()) { 
+				return FormValidation.error("Must specify license server"); 
+			}
 
-				//test connection 
-				try {
-					Socket socket = new Socket();
-					Integer portNumber = lsPort.isEmpty() ? 
-							27000 : Integer.parseInt(lsPort); 
-
-					//InetSocketAddress resolves host name to IP if necessary
-					socket.connect(new InetSocketAddress(lsIPAddress, 
-							portNumber), 1000);
-					
-					//if it cannot connect, exception is thrown 
-					socket.close();
-					return FormValidation.ok("Connected to license server"); 
-				} catch (IOException ex) {
-					return FormValidation.error("Cannot reach license server"); 
-				} 
-			} catch (Exception e) {
-				e.printStackTrace();
-				return FormValidation.error("Client error");
+			//answer from the background probe of the saved settings 
+			HealthProber.Status status = HealthProber.get().getStatus(
+					HealthProber.LICENSE_SERVER); 
+			if (status == null || !status.isFresh() 
+					|| !lsIPAddress.equals(this.lsIPAddress) 
+					|| !lsPort.equals(Util.fixNull(this.lsPort))) { 
+				status = HealthProber.probeLicenseServer(lsIPAddress, lsPort); 
+			}
+			if (status.isUp()) { 
+				return FormValidation.ok("Connected to license server (" 
+						+ status.getLatency() + " ms)"); 
 			}
+			return FormValidation.error("Cannot reach license server: " 
+					+ status.getMessage()); 
 		}
 
 		public FormValidation doTestConnection(
@@ -841,21 +2956,12 @@ public class ITest extends CommandInterpreter {
 				@QueryParameter final String dbPassword) 
 						throws IOException, ServletException {
 
-			Connection connection = null;
-			String dburl = null; 
-
 			if (dbURI.isEmpty()) { 
 				if (dbName.isEmpty() || dbType.isEmpty() 
 						|| dbIPAddress.isEmpty() ||dbPort.isEmpty() 
 						|| dbUsername.isEmpty() || dbPassword.isEmpty()) { 
 					return FormValidation.error("Missing required field"); 
 				}
-
-				//build the connection URI 
-				dburl = "jdbc:" + dbType.toLowerCase() + "://" 
-						+ dbIPAddress + ":" + dbPort + "/" + dbName; 
-			} else {
-				dburl = dbURI; 
 			}
 
 			//required for both URI or individual fields 
@@ -864,21 +2970,22 @@ public class ITest extends CommandInterpreter {
 						+ "and password"); 
 			}
 
+			String dburl = jdbcUrl(dbType, dbURI, dbIPAddress, dbPort, dbName); 
+			Connection connection = null;
 			try { 
-				
-				//initialize class driver 
-				if (dbType.equalsIgnoreCase("MySQL") 
-						|| parseType(dbType).equalsIgnoreCase("mysql")) {
-					Class.forName("com.mysql.jdbc.Driver");
+				loadDriver(dbURI.isEmpty() ? dbType : parseType(dbURI)); 
+
+				//saved settings are tested through the shared pool 
+				ConnectionPool pool = ConnectionPool.get(); 
+				if (pool != null && pool.matches(dburl, dbUsername, 
+						dbPassword)) { 
+					connection = pool.borrow(); 
+					return FormValidation.ok("Success (" 
+							+ pool.getStatistics() + ")"); 
 				}
-
-				if (dbType.equalsIgnoreCase("PostgreSQL") 
-						|| parseType(dbType).equalsIgnoreCase("postgresql")) { 
-					Class.forName("org.postgresql.Driver");
-				}
-
-				connection = DriverManager.getConnection(dburl, dbUsername,
-						dbPassword);
+				connection = DriverManager.getConnection(dburl, 
+						ConnectionPool.connectionProperties(dburl, dbUsername, 
+								dbPassword));
 
                 return FormValidation.ok("Success");
             } catch (SQLException e) {
@@ -893,25 +3000,39 @@ public class ITest extends CommandInterpreter {
                     } catch (SQLException e) {
                         e.printStackTrace();
                     }
-				}
 			}
 		}
 
-	@Override
-	protected String getContents() {
-		// required, but JavaDoc doesn't mention function 
-		return null;
-	}
-
-	@Override
-	protected String getFileExtension() {
-		// required, but JavaDoc doesn't mention function 
-		return null;
-	}
+		/**
+		 * Build the JDBC URL from the database fields. 
+		 * @return the URI when given, else a URL from the other fields 
+		 */
+		static String jdbcUrl(String dbType, String dbURI, 
+				String dbIPAddress, String dbPort, String dbName) { 
+			if (!Util.fixNull(dbURI).isEmpty()) { 
+				return dbURI; 
+			}
+			return "jdbc:" + Util.fixNull(dbType).toLowerCase() + "://" 
+					+ dbIPAddress + ":" + dbPort + "/" + dbName; 
+		}
 
-	@Override
-	public String[] buildCommandLine(FilePath script) {
-		// required, but JavaDoc doesn't mention function 
-		return null;
-	}
+		/**
+		 * Initialize the JDBC driver class for a database type once. 
+		 * @param type MySQL or PostgreSQL, any case 
+		 * @throws ClassNotFoundException if the driver is not installed 
+		 */
+		static synchronized void loadDriver(String type) 
+				throws ClassNotFoundException { 
+			String driver = "mysql".equalsIgnoreCase(type) 
+					? "com.mysql.jdbc.Driver" : "org.postgresql.Driver"; 
+			if (loadedDrivers.add(driver)) { 
+				try { 
+					Class.forName(driver); 
+				} catch (ClassNotFoundException e) { 
+					loadedDrivers.remove(driver); 
+					throw e; 
+				}
+			}
+		}
+		}
 }
@@ -0,0 +1,96 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import hudson.Extension;
+import hudson.model.RootAction;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Health endpoint at /itest-health reporting the cached status of the 
+ * license server and the test report database as JSON. Answers 503 when a 
+ * dependency is down, so it can back a load balancer or monitoring check. 
+ * The addresses of the dependencies and probe messages are only shown to 
+ * administrators. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+@Extension
+public class ITestHealthAction implements RootAction {
+
+	public String getIconFileName() {
+		return null;
+	}
+
+	public String getDisplayName() {
+		return "iTest Health";
+	}
+
+	public String getUrlName() {
+		return "itest-health";
+	}
+
+	public void doIndex(StaplerRequest req, StaplerResponse rsp) 
+			throws IOException {
+		Jenkins.getInstance().checkPermission(Jenkins.READ);
+		boolean healthy = true;
+		boolean admin = Jenkins.getInstance().hasPermission(Jenkins.ADMINISTER);
+		JSONArray dependencies = new JSONArray();
+		for (HealthProber.Status status : HealthProber.get().getStatuses()) {
+			healthy &= status.isUp();
+			JSONObject dependency = new JSONObject()
+					.element("name", status.getName())
+					.element("up", status.isUp())
+					.element("latency", status.getLatency())
+					.element("checked", status.getChecked());
+			if (admin) {
+				//messages of failed connections name the address as well 
+				dependency.element("target", status.getTarget())
+						.element("message", status.getMessage());
+			}
+			dependencies.add(dependency);
+		}
+		JSONObject health = new JSONObject()
+				.element("healthy", healthy)
+				.element("dependencies", dependencies);
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.setHeader("Cache-Control", "no-cache");
+		if (!healthy) {
+			rsp.setStatus(HttpServletResponse.SC_SERVICE_UNAVAILABLE);
+		}
+		rsp.getWriter().print(health.toString());
+	}
+}
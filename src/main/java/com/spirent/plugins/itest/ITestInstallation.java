@@ -0,0 +1,114 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.util.List;
+
+import org.kohsuke.stapler.DataBoundConstructor;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.model.EnvironmentSpecific;
+import hudson.model.Node;
+import hudson.model.TaskListener;
+import hudson.slaves.NodeSpecific;
+import hudson.tools.ToolDescriptor;
+import hudson.tools.ToolInstallation;
+import hudson.tools.ToolProperty;
+import jenkins.model.Jenkins;
+
+/**
+ * A named iTest installation, configured under Global Tool Configuration. 
+ * The home is the iTest installation directory or the itestrt executable 
+ * itself, and can be overridden per agent in the agent's tool locations. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ITestInstallation extends ToolInstallation 
+		implements NodeSpecific<ITestInstallation>, 
+		EnvironmentSpecific<ITestInstallation> {
+
+	private static final long serialVersionUID = 1L;
+
+	@DataBoundConstructor
+	public ITestInstallation(String name, String home, 
+			List<? extends ToolProperty<?>> properties) {
+		super(name, home, properties);
+	}
+
+	public ITestInstallation forNode(Node node, TaskListener log) 
+			throws IOException, InterruptedException {
+		return new ITestInstallation(getName(), translateFor(node, log), 
+				getProperties().toList());
+	}
+
+	public ITestInstallation forEnvironment(EnvVars environment) {
+		return new ITestInstallation(getName(), environment.expand(getHome()), 
+				getProperties().toList());
+	}
+
+	/**
+	 * @param name
+	 * @return installation with the name, or null if there is none 
+	 */
+	static ITestInstallation get(String name) {
+		DescriptorImpl descriptor = Jenkins.getInstance().getDescriptorByType(
+				DescriptorImpl.class);
+		if (descriptor == null) {
+			return null;
+		}
+		for (ITestInstallation installation : descriptor.getInstallations()) {
+			if (installation.getName().equals(name)) {
+				return installation;
+			}
+		}
+		return null;
+	}
+
+	@Extension
+	public static final class DescriptorImpl 
+			extends ToolDescriptor<ITestInstallation> {
+
+		public DescriptorImpl() {
+			load();
+		}
+
+		@Override
+		public String getDisplayName() {
+			return "iTest";
+		}
+
+		@Override
+		public void setInstallations(ITestInstallation... installations) {
+			super.setInstallations(installations);
+			save();
+			//paths may have changed on every node 
+			ExecutableCache.clear();
+		}
+	}
+}
@@ -0,0 +1,339 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.ObjectName;
+
+import hudson.Extension;
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Project;
+import hudson.model.Queue;
+import hudson.model.queue.QueueListener;
+
+/**
+ * Counters and latency histograms of iTest execution on this controller, 
+ * from startup on. Updates use atomic counters only, so they can be made 
+ * from iTestRT output handling. The metrics are served in Prometheus text 
+ * format by {@link ITestMetricsAction} and registered with JMX. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public final class ITestMetrics implements ITestMetricsMBean {
+
+	private static final Logger LOGGER = 
+			Logger.getLogger(ITestMetrics.class.getName());
+
+	static final String OBJECT_NAME = "com.spirent.plugins.itest:type=Metrics";
+
+	private static final ITestMetrics INSTANCE = new ITestMetrics();
+
+	private final AtomicLong testsPassed = new AtomicLong();
+	private final AtomicLong testsFailed = new AtomicLong();
+	private final AtomicLong testsFlaky = new AtomicLong();
+	private final AtomicLong stepsRunning = new AtomicLong();
+	private final AtomicLong reportsPublished = new AtomicLong();
+	private final AtomicLong reportBytes = new AtomicLong();
+	private final AtomicLong logLines = new AtomicLong();
+	private final Histogram itestrt = new Histogram();
+	private final Histogram reportCopies = new Histogram();
+	private final Histogram dependencyWait = new Histogram();
+	private final Histogram queue = new Histogram();
+
+	/**
+	 * Latency of each named phase. Phases are a small fixed set, so the 
+	 * map only grows until every phase was seen once. 
+	 */
+	private final ConcurrentHashMap<String, Histogram> phases = 
+			new ConcurrentHashMap<String, Histogram>();
+
+	private ITestMetrics() {
+	}
+
+	static ITestMetrics get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Register the metrics with the platform MBean server. 
+	 */
+	@Initializer(after = InitMilestone.PLUGINS_STARTED)
+	public static void register() {
+		try {
+			ObjectName name = new ObjectName(OBJECT_NAME);
+			if (!ManagementFactory.getPlatformMBeanServer().isRegistered(name)) {
+				ManagementFactory.getPlatformMBeanServer().registerMBean(
+						INSTANCE, name);
+			}
+		} catch (Exception e) {
+			LOGGER.log(Level.WARNING, "Cannot register iTest metrics with JMX", 
+					e);
+		}
+	}
+
+	/**
+	 * Count the final results of a step. 
+	 * @param results
+	 */
+	void countResults(List<TestCaseResult> results) {
+		for (TestCaseResult result : results) {
+			if (result.isCached()) {
+				continue;
+			}
+			if (result.isPassed()) {
+				testsPassed.incrementAndGet();
+			} else {
+				testsFailed.incrementAndGet();
+			}
+			if (result.isFlaky()) {
+				testsFlaky.incrementAndGet();
+			}
+		}
+	}
+
+	void stepStarted() {
+		stepsRunning.incrementAndGet();
+	}
+
+	void stepFinished() {
+		stepsRunning.decrementAndGet();
+	}
+
+	/**
+	 * Add a timed span, see {@link ITestTimelineAction#record}. 
+	 * @param category
+	 * @param name
+	 * @param nanos
+	 */
+	void observe(String category, String name, long nanos) {
+		if (category.equals("itestrt")) {
+			itestrt.observe(nanos);
+		} else if (category.equals("report")) {
+			reportCopies.observe(nanos);
+		} else if (category.equals("phase")) {
+			Histogram phase = phases.get(name);
+			if (phase == null) {
+				phase = new Histogram();
+				Histogram raced = phases.putIfAbsent(name, phase);
+				if (raced != null) {
+					phase = raced;
+				}
+			}
+			phase.observe(nanos);
+		}
+	}
+
+	/**
+	 * @param bytes size of a report copied to the controller 
+	 */
+	void reportPublished(long bytes) {
+		reportsPublished.incrementAndGet();
+		reportBytes.addAndGet(bytes);
+	}
+
+	void lineScanned() {
+		logLines.incrementAndGet();
+	}
+
+	/**
+	 * @param nanos time a build waited for the license server or database 
+	 */
+	void dependencyWaited(long nanos) {
+		dependencyWait.observe(nanos);
+	}
+
+	/**
+	 * @param millis time a build waited in the queue 
+	 */
+	void queued(long millis) {
+		queue.observe(millis * 1000000L);
+	}
+
+	/**
+	 * Measures how long builds of projects with an iTest build step waited 
+	 * in the queue, from when they were scheduled until they left it to 
+	 * start. Pipeline steps cannot be told apart from the queue and are not 
+	 * measured. 
+	 */
+	@Extension
+	public static final class QueueTimes extends QueueListener {
+		@Override
+		public void onLeft(Queue.LeftItem item) {
+			if (item.isCancelled() || !(item.task instanceof Project)) {
+				return;
+			}
+			if (((Project<?, ?>) item.task).getBuildersList().get(ITest.class) 
+					!= null) {
+				INSTANCE.queued(System.currentTimeMillis() 
+						- item.getInQueueSince());
+			}
+		}
+	}
+
+	public long getTestsExecuted() {
+		return testsPassed.get() + testsFailed.get();
+	}
+
+	public long getTestsPassed() {
+		return testsPassed.get();
+	}
+
+	public long getTestsFailed() {
+		return testsFailed.get();
+	}
+
+	public long getTestsFlaky() {
+		return testsFlaky.get();
+	}
+
+	public long getStepsRunning() {
+		return stepsRunning.get();
+	}
+
+	public long getItestrtRuns() {
+		return itestrt.getCount();
+	}
+
+	public double getItestrtSeconds() {
+		return itestrt.getSum();
+	}
+
+	public long getReportsPublished() {
+		return reportsPublished.get();
+	}
+
+	public long getReportBytes() {
+		return reportBytes.get();
+	}
+
+	public long getLogLinesScanned() {
+		return logLines.get();
+	}
+
+	public double getDependencyWaitSeconds() {
+		return dependencyWait.getSum();
+	}
+
+	public double getQueueSeconds() {
+		return queue.getSum();
+	}
+
+	/**
+	 * Write all metrics in Prometheus text exposition format. 
+	 * @param out
+	 */
+	void writePrometheus(PrintWriter out) throws IOException {
+		counter(out, "itest_tests_total", "Test cases run by iTestRT.", 
+				"result=\"passed\"", testsPassed.get());
+		sample(out, "itest_tests_total", "result=\"failed\"", 
+				testsFailed.get());
+		counter(out, "itest_tests_flaky_total", 
+				"Test cases that passed only on a rerun.", null, 
+				testsFlaky.get());
+		gauge(out, "itest_steps_running", "iTest steps running now.", 
+				stepsRunning.get());
+		counter(out, "itest_reports_published_total", 
+				"HTML reports copied to the controller.", null, 
+				reportsPublished.get());
+		counter(out, "itest_report_bytes_total", 
+				"Bytes of HTML reports copied to the controller.", null, 
+				reportBytes.get());
+		counter(out, "itest_log_lines_scanned_total", 
+				"Lines of iTestRT output scanned for statuses.", null, 
+				logLines.get());
+		histogram(out, "itest_itestrt_run_seconds", 
+				"Duration of iTestRT runs.", null, itestrt, true);
+		histogram(out, "itest_report_copy_seconds", 
+				"Duration of copying one report.", null, reportCopies, true);
+		histogram(out, "itest_dependency_wait_seconds", 
+				"Time builds waited for the license server or database.", 
+				null, dependencyWait, true);
+		histogram(out, "itest_queue_seconds", 
+				"Time freestyle builds with iTest steps waited in the queue.", 
+				null, queue, true);
+		boolean header = true;
+		for (Map.Entry<String, Histogram> phase : phases.entrySet()) {
+			histogram(out, "itest_phase_seconds", 
+					"Duration of the phases of iTest steps.", 
+					"phase=\"" + escape(phase.getKey()) + "\"", 
+					phase.getValue(), header);
+			header = false;
+		}
+	}
+
+	private static void counter(PrintWriter out, String name, String help, 
+			String labels, long value) {
+		out.println("# HELP " + name + " " + help);
+		out.println("# TYPE " + name + " counter");
+		sample(out, name, labels, value);
+	}
+
+	private static void gauge(PrintWriter out, String name, String help, 
+			long value) {
+		out.println("# HELP " + name + " " + help);
+		out.println("# TYPE " + name + " gauge");
+		sample(out, name, null, value);
+	}
+
+	private static void sample(PrintWriter out, String name, String labels, 
+			Object value) {
+		out.println(name + (labels == null ? "" : "{" + labels + "}") + " " 
+				+ value);
+	}
+
+	private static void histogram(PrintWriter out, String name, String help, 
+			String labels, Histogram histogram, boolean header) {
+		if (header) {
+			out.println("# HELP " + name + " " + help);
+			out.println("# TYPE " + name + " histogram");
+		}
+		String prefix = labels == null ? "" : labels + ",";
+		long[] cumulative = histogram.getCumulative();
+		for (int i = 0; i < cumulative.length; i++) {
+			String le = i < Histogram.BOUNDS.length 
+					? String.valueOf(Histogram.BOUNDS[i]) : "+Inf";
+			sample(out, name + "_bucket", prefix + "le=\"" + le + "\"", 
+					cumulative[i]);
+		}
+		sample(out, name + "_sum", labels, histogram.getSum());
+		sample(out, name + "_count", labels, histogram.getCount());
+	}
+
+	private static String escape(String value) {
+		return value.replace("\\", "\\\\").replace("\"", "\\\"");
+	}
+}
@@ -0,0 +1,303 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Live state of every test case of a running build: pending, running, 
+ * passed or failed, with an estimate of the remaining time based on the 
+ * durations of earlier builds. The progress page polls {@link #doProgress} 
+ * for the test cases that changed since its last poll, so watching a run 
+ * does not need the console log. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ITestProgressAction implements RunAction2 {
+
+	static final String PENDING = "pending";
+	static final String RUNNING = "running";
+	static final String PASSED = "passed";
+	static final String FAILED = "failed";
+
+	private static final int HISTORY_BUILDS = 10;
+
+	private transient Run<?, ?> run;
+
+	/**
+	 * Test cases by combination and name, in the order they were queued. 
+	 */
+	private transient Map<String, Entry> entries;
+	private transient volatile Map<String, Long> expected;
+	private transient long version;
+
+	/**
+	 * State of one test case in one parameter combination. 
+	 */
+	private static final class Entry {
+		final String combination;
+		final String testCase;
+		String state = PENDING;
+		String status = "";
+		long started;
+		long duration;
+		long version;
+
+		Entry(String combination, String testCase) {
+			this.combination = combination;
+			this.testCase = testCase;
+		}
+	}
+
+	public final Run<?, ?> getOwner() {
+		return run;
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	/**
+	 * Shown in the side panel only while the build runs. 
+	 */
+	public String getIconFileName() {
+		return run != null && run.isBuilding() 
+				? "/plugin/itest/images/24x24/Spirent_favicon.ico" : null;
+	}
+
+	public String getDisplayName() {
+		return "iTest Progress";
+	}
+
+	public String getUrlName() {
+		return "itestProgress";
+	}
+
+	/**
+	 * Get the progress of a run, attaching it on first use. Every iTest 
+	 * step of a run shares one action. 
+	 * @param run
+	 * @return the action of the run 
+	 */
+	static ITestProgressAction attach(Run<?, ?> run) {
+		synchronized (ITestProgressAction.class) {
+			ITestProgressAction action = run.getAction(ITestProgressAction.class);
+			if (action == null) {
+				action = new ITestProgressAction();
+				run.addAction(action);
+			}
+			return action;
+		}
+	}
+
+	private static String key(String combination, String testCase) {
+		return combination + "\t" + testCase;
+	}
+
+	private Map<String, Entry> entries() {
+		if (entries == null) {
+			entries = new LinkedHashMap<String, Entry>();
+		}
+		return entries;
+	}
+
+	/**
+	 * Queue test cases, resetting those queued before, e.g. for a rerun. 
+	 * @param combination
+	 * @param tests
+	 */
+	void queue(String combination, List<String> tests) {
+		//load the history on the build thread, not while serving the page 
+		expected();
+		synchronized (this) {
+			for (String test : tests) {
+				String key = key(combination, test);
+				Entry entry = entries().get(key);
+				if (entry == null) {
+					entry = new Entry(combination, test);
+					entries().put(key, entry);
+				}
+				entry.state = PENDING;
+				entry.status = "";
+				entry.started = 0;
+				entry.duration = 0;
+				entry.version = ++version;
+			}
+		}
+	}
+
+	/**
+	 * @param combination
+	 * @param test test case iTestRT started executing 
+	 */
+	synchronized void started(String combination, String test) {
+		Entry entry = entries().get(key(combination, test));
+		if (entry != null) {
+			entry.state = RUNNING;
+			entry.started = System.currentTimeMillis();
+			entry.version = ++version;
+		}
+	}
+
+	/**
+	 * @param combination
+	 * @param test
+	 * @param status execution status reported for the test case 
+	 * @param duration milliseconds it ran 
+	 */
+	synchronized void finished(String combination, String test, 
+			String status, long duration) {
+		Entry entry = entries().get(key(combination, test));
+		if (entry != null) {
+			entry.state = "Pass".equalsIgnoreCase(status) ? PASSED : FAILED;
+			entry.status = status;
+			entry.duration = duration;
+			entry.version = ++version;
+		}
+	}
+
+	/**
+	 * @return milliseconds each test case took in the latest earlier build 
+	 * that ran it, read without holding the lock of the action 
+	 */
+	private Map<String, Long> expected() {
+		Map<String, Long> known = expected;
+		if (known != null) {
+			return known;
+		}
+		known = new HashMap<String, Long>();
+		Run<?, ?> previous = run == null ? null : run.getPreviousBuild();
+		for (int i = 0; previous != null && i < HISTORY_BUILDS; i++) {
+			ITestResultAction results = 
+					previous.getAction(ITestResultAction.class);
+			if (results != null) {
+				for (TestCaseResult result : results.getResults()) {
+					String key = key(result.getCombination(), 
+							result.getTestCase());
+					if (!known.containsKey(key) && !result.isCached() 
+							&& result.getDuration() > 0) {
+						known.put(key, result.getDuration());
+					}
+				}
+			}
+			previous = previous.getPreviousBuild();
+		}
+		synchronized (this) {
+			if (expected == null) {
+				expected = known;
+			}
+			return expected;
+		}
+	}
+
+	/**
+	 * @return milliseconds the unfinished test cases are expected to take, 
+	 * using the mean of known durations for test cases without history 
+	 */
+	long getEta() {
+		Map<String, Long> known = expected();
+		long mean = 0;
+		if (!known.isEmpty()) {
+			long sum = 0;
+			for (long duration : known.values()) {
+				sum += duration;
+			}
+			mean = sum / known.size();
+		}
+		long now = System.currentTimeMillis();
+		long eta = 0;
+		synchronized (this) {
+			for (Map.Entry<String, Entry> e : entries().entrySet()) {
+				Entry entry = e.getValue();
+				Long duration = known.get(e.getKey());
+				long estimate = duration == null ? mean : duration;
+				if (entry.state.equals(PENDING)) {
+					eta += estimate;
+				} else if (entry.state.equals(RUNNING)) {
+					eta += Math.max(0, estimate - (now - entry.started));
+				}
+			}
+		}
+		return eta;
+	}
+
+	/**
+	 * Serve the test cases changed after the version the page already has. 
+	 * Request parameter since is the version of the previous answer, 0 for 
+	 * everything. 
+	 */
+	public void doProgress(StaplerRequest req, StaplerResponse rsp) 
+			throws IOException {
+		long since = 0;
+		try {
+			String param = req.getParameter("since");
+			since = param == null ? 0 : Long.parseLong(param);
+		} catch (NumberFormatException e) {
+			since = 0;
+		}
+		JSONObject delta = new JSONObject();
+		JSONArray changed = new JSONArray();
+		long eta = getEta();
+		synchronized (this) {
+			for (Entry entry : entries().values()) {
+				if (entry.version > since) {
+					changed.add(new JSONObject()
+							.element("combination", entry.combination)
+							.element("testCase", entry.testCase)
+							.element("state", entry.state)
+							.element("status", entry.status)
+							.element("started", entry.started)
+							.element("duration", entry.duration));
+				}
+			}
+			delta.element("version", version);
+		}
+		delta.element("now", System.currentTimeMillis())
+				.element("building", run != null && run.isBuilding())
+				.element("eta", eta)
+				.element("entries", changed);
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.setHeader("Cache-Control", "no-cache");
+		rsp.getWriter().print(delta.toString());
+	}
+}
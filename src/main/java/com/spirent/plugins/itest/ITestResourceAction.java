@@ -0,0 +1,313 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import hudson.Util;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+/**
+ * CPU, memory and thread samples of the iTestRT processes of a run, with 
+ * the times test cases completed. Samples are kept in a ring buffer that 
+ * grows up to its capacity, so a long run keeps its most recent samples, 
+ * and only the samples taken are saved with the build. The build page 
+ * shows them as a chart. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ITestResourceAction implements RunAction2 {
+
+	private static final int CAPACITY = 3600;
+	private static final int INITIAL_CAPACITY = 64;
+	private static final int MAX_BOUNDARIES = 10000;
+	private static final int WIDTH = 800;
+	private static final int HEIGHT = 160;
+
+	private transient Run<?, ?> run;
+	private long[] times = new long[0];
+	/**
+	 * Tenths of a percent of one core. 
+	 */
+	private int[] cpu = new int[0];
+	private long[] rss = new long[0];
+	private int[] threads = new int[0];
+	private int next;
+	private int count;
+	private long peakRss;
+	private final List<Boundary> boundaries = new ArrayList<Boundary>();
+
+	/**
+	 * A test case that completed. 
+	 */
+	public static final class Boundary {
+		private final long time;
+		private final String testCase;
+		private final String status;
+
+		Boundary(long time, String testCase, String status) {
+			this.time = time;
+			this.testCase = testCase;
+			this.status = status;
+		}
+
+		public long getTime() {
+			return time;
+		}
+
+		public String getTestCase() {
+			return testCase;
+		}
+
+		public String getStatus() {
+			return status;
+		}
+	}
+
+	public final Run<?, ?> getOwner() {
+		return run;
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public String getIconFileName() {
+		return "/plugin/itest/images/24x24/Spirent_favicon.ico";
+	}
+
+	public String getDisplayName() {
+		return "iTest Resources";
+	}
+
+	public String getUrlName() {
+		return "itestResources";
+	}
+
+	/**
+	 * Get the resource samples of a run, attaching them on first use. 
+	 * Every iTest step of a run shares one buffer. 
+	 * @param run
+	 * @return the action of the run 
+	 */
+	static ITestResourceAction attach(Run<?, ?> run) {
+		synchronized (ITestResourceAction.class) {
+			ITestResourceAction action = run.getAction(ITestResourceAction.class);
+			if (action == null) {
+				action = new ITestResourceAction();
+				run.addAction(action);
+			}
+			return action;
+		}
+	}
+
+	/**
+	 * @param time
+	 * @param cpuPercent CPU use, 100 for one busy core 
+	 * @param rssKb resident memory in kB 
+	 * @param threadCount
+	 */
+	synchronized void add(long time, double cpuPercent, long rssKb, 
+			int threadCount) {
+		if (next == times.length) {
+			resize(Math.min(CAPACITY, 
+					Math.max(INITIAL_CAPACITY, times.length * 2)));
+		}
+		times[next] = time;
+		cpu[next] = (int) Math.round(cpuPercent * 10);
+		rss[next] = rssKb;
+		threads[next] = threadCount;
+		next = (next + 1) % CAPACITY;
+		count = Math.min(count + 1, CAPACITY);
+		peakRss = Math.max(peakRss, rssKb);
+	}
+
+	/**
+	 * Copy the samples in the order they were taken into buffers of the 
+	 * given length, at least the number of samples. 
+	 * @param length
+	 */
+	private void resize(int length) {
+		long[] newTimes = new long[length];
+		int[] newCpu = new int[length];
+		long[] newRss = new long[length];
+		int[] newThreads = new int[length];
+		int first = first();
+		for (int i = 0; i < count; i++) {
+			int sample = (first + i) % times.length;
+			newTimes[i] = times[sample];
+			newCpu[i] = cpu[sample];
+			newRss[i] = rss[sample];
+			newThreads[i] = threads[sample];
+		}
+		times = newTimes;
+		cpu = newCpu;
+		rss = newRss;
+		threads = newThreads;
+		next = count % length;
+	}
+
+	/**
+	 * @return index of the oldest sample 
+	 */
+	private int first() {
+		return times.length == 0 ? 0 
+				: (next - count + times.length) % times.length;
+	}
+
+	/**
+	 * Save only the samples taken. 
+	 * @return this action with its buffers trimmed 
+	 */
+	protected synchronized Object writeReplace() {
+		if (times.length != count) {
+			resize(count);
+		}
+		return this;
+	}
+
+	/**
+	 * Record that a test case completed. 
+	 * @param testCase
+	 * @param status
+	 */
+	synchronized void boundary(String testCase, String status) {
+		if (boundaries.size() < MAX_BOUNDARIES) {
+			boundaries.add(new Boundary(System.currentTimeMillis(), testCase, 
+					status));
+		}
+	}
+
+	public synchronized int getSampleCount() {
+		return count;
+	}
+
+	/**
+	 * @return highest resident memory in MB 
+	 */
+	public synchronized long getPeakMemory() {
+		return peakRss / 1024;
+	}
+
+	/**
+	 * @return highest CPU use in percent of one core 
+	 */
+	public synchronized double getPeakCpu() {
+		int peak = 0;
+		for (int i = 0; i < count; i++) {
+			peak = Math.max(peak, cpu[i]);
+		}
+		return peak / 10.0;
+	}
+
+	public synchronized int getPeakThreads() {
+		int peak = 0;
+		for (int i = 0; i < count; i++) {
+			peak = Math.max(peak, threads[i]);
+		}
+		return peak;
+	}
+
+	public synchronized List<Boundary> getBoundaries() {
+		return new ArrayList<Boundary>(boundaries);
+	}
+
+	/**
+	 * Serve the samples as an SVG chart: memory, CPU and threads each 
+	 * scaled to their peak, and a vertical line where a test case completed. 
+	 */
+	public void doChart(StaplerRequest req, StaplerResponse rsp) 
+			throws IOException {
+		StringBuilder svg = new StringBuilder(String.format("<svg "
+				+ "xmlns='http://www.w3.org/2000/svg' width='%d' height='%d' "
+				+ "font-family='sans-serif' font-size='11'>", WIDTH, 
+				HEIGHT + 20));
+		synchronized (this) {
+			int first = first();
+			long from = count > 0 ? times[first] : 0;
+			long span = count > 1 ? Math.max(1, 
+					times[(first + count - 1) % times.length] - from) : 1;
+			for (Boundary boundary : boundaries) {
+				if (boundary.time < from || boundary.time > from + span) {
+					continue;
+				}
+				int x = (int) ((boundary.time - from) * WIDTH / span);
+				svg.append(String.format("<line x1='%d' y1='0' x2='%d' y2='%d' "
+						+ "stroke='%s' stroke-dasharray='2,2'><title>%s %s"
+						+ "</title></line>", x, x, HEIGHT, 
+						"Pass".equalsIgnoreCase(boundary.status) 
+								? "#ccc" : "#e88", 
+						Util.escape(boundary.testCase), 
+						Util.escape(boundary.status)));
+			}
+			polyline(svg, first, from, span, rss, "#36c");
+			long[] values = new long[times.length];
+			for (int i = 0; i < values.length; i++) {
+				values[i] = cpu[i];
+			}
+			polyline(svg, first, from, span, values, "#c33");
+			for (int i = 0; i < values.length; i++) {
+				values[i] = threads[i];
+			}
+			polyline(svg, first, from, span, values, "#393");
+		}
+		svg.append(String.format("<text x='0' y='%1$d' fill='#36c'>memory"
+				+ " (peak %2$d MB)</text><text x='200' y='%1$d' fill='#c33'>"
+				+ "CPU (peak %3$.1f%%)</text><text x='400' y='%1$d' "
+				+ "fill='#393'>threads (peak %4$d)</text></svg>", HEIGHT + 15, 
+				getPeakMemory(), getPeakCpu(), getPeakThreads()));
+		rsp.setContentType("image/svg+xml;charset=UTF-8");
+		rsp.getWriter().print(svg);
+	}
+
+	private void polyline(StringBuilder svg, int first, long from, long span, 
+			long[] values, String color) {
+		long peak = 1;
+		for (int i = 0; i < count; i++) {
+			peak = Math.max(peak, values[i]);
+		}
+		svg.append("<polyline fill='none' stroke='").append(color)
+				.append("' points='");
+		for (int i = 0; i < count; i++) {
+			int sample = (first + i) % times.length;
+			svg.append((times[sample] - from) * WIDTH / span).append(',')
+					.append(HEIGHT - values[sample] * (HEIGHT - 2) / peak)
+					.append(' ');
+		}
+		svg.append("'/>");
+	}
+}
@@ -0,0 +1,215 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletResponse;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import hudson.Util;
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+
+/**
+ * Per test case results of the iTest steps of a run, shown on the build page. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ITestResultAction implements RunAction2 {
+
+	private transient Run<?, ?> run;
+	private final List<TestCaseResult> results;
+
+	public ITestResultAction(List<TestCaseResult> results) {
+		this.results = new ArrayList<TestCaseResult>(results);
+	}
+
+	public final Run<?, ?> getOwner() {
+		return run;
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public String getIconFileName() {
+		return "/plugin/itest/images/24x24/Spirent_favicon.ico";
+	}
+
+	public String getDisplayName() {
+		return "iTest Results";
+	}
+
+	public String getUrlName() {
+		return "itestResults";
+	}
+
+	/**
+	 * Add results to the action of a run, creating it on first use. Every 
+	 * iTest step of a run, including those in parallel Pipeline branches, 
+	 * shares one action. 
+	 * @param run
+	 * @param results
+	 */
+	static void addResults(Run<?, ?> run, List<TestCaseResult> results) {
+		synchronized (ITestResultAction.class) {
+			ITestResultAction action = run.getAction(ITestResultAction.class);
+			if (action == null) {
+				run.addAction(new ITestResultAction(results));
+			} else {
+				action.add(results);
+			}
+		}
+	}
+
+	private synchronized void add(List<TestCaseResult> more) {
+		results.addAll(more);
+	}
+
+	public synchronized List<TestCaseResult> getResults() {
+		return Collections.unmodifiableList(
+				new ArrayList<TestCaseResult>(results));
+	}
+
+	/**
+	 * @return results grouped by parameter sweep combination, in run order 
+	 */
+	public Map<String, List<TestCaseResult>> getResultsByCombination() {
+		Map<String, List<TestCaseResult>> grouped = 
+				new LinkedHashMap<String, List<TestCaseResult>>();
+		for (TestCaseResult result : getResults()) {
+			List<TestCaseResult> group = grouped.get(result.getCombination());
+			if (group == null) {
+				group = new ArrayList<TestCaseResult>();
+				grouped.put(result.getCombination(), group);
+			}
+			group.add(result);
+		}
+		return grouped;
+	}
+
+	/**
+	 * @param result
+	 * @return true if the full iTestRT output of the test case was written 
+	 * to a side log 
+	 */
+	public boolean hasSideLog(TestCaseResult result) {
+		return run != null && new SideLogs(run.getRootDir()).exists(
+				result.getCombination(), result.getTestCase());
+	}
+
+	/**
+	 * Serve the side log of a test case as plain text, decompressed while 
+	 * it is sent. Request parameters are combination and testCase. 
+	 */
+	public void doSideLog(StaplerRequest req, StaplerResponse rsp) 
+			throws IOException {
+		String combination = Util.fixNull(req.getParameter("combination"));
+		String testCase = Util.fixNull(req.getParameter("testCase"));
+		SideLogs logs = new SideLogs(run.getRootDir());
+		if (testCase.isEmpty() || !logs.exists(combination, testCase)) {
+			rsp.sendError(HttpServletResponse.SC_NOT_FOUND);
+			return;
+		}
+		rsp.setContentType("text/plain;charset=UTF-8");
+		InputStream in = logs.read(combination, testCase);
+		try {
+			OutputStream out = rsp.getOutputStream();
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) != -1) {
+				out.write(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+	}
+
+	/**
+	 * @return true if result history can be read from the test report 
+	 * database 
+	 */
+	public boolean isHistoryAvailable() {
+		GlobalConfig global = GlobalConfig.get();
+		return global.isUploadResults() && global.isDatabaseConfigured();
+	}
+
+	/**
+	 * @param result
+	 * @return history of the test case over the last days in this job, or 
+	 * null if there is none 
+	 */
+	public TestHistory.Entry getHistory(TestCaseResult result) {
+		return TestHistory.forJob(run.getParent().getFullName()).get(
+				TestHistory.key(result.getCombination(), result.getTestCase()));
+	}
+
+	/**
+	 * @return number of days covered by {@link #getHistory} 
+	 */
+	public int getHistoryDays() {
+		return TestHistory.DAYS;
+	}
+
+	public int getPassCount() {
+		int count = 0;
+		for (TestCaseResult result : getResults()) {
+			if (result.isPassed()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public int getFlakyCount() {
+		int count = 0;
+		for (TestCaseResult result : getResults()) {
+			if (result.isFlaky()) {
+				count++;
+			}
+		}
+		return count;
+	}
+
+	public int getFailCount() {
+		return getResults().size() - getPassCount();
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.jenkinsci.plugins.structs.describable.DescribableModel;
+import org.jenkinsci.plugins.workflow.steps.Step;
+import org.jenkinsci.plugins.workflow.steps.StepContext;
+import org.jenkinsci.plugins.workflow.steps.StepDescriptor;
+import org.jenkinsci.plugins.workflow.steps.StepExecution;
+import org.jenkinsci.plugins.workflow.steps.SynchronousNonBlockingStepExecution;
+import org.kohsuke.stapler.StaplerRequest;
+
+import hudson.EnvVars;
+import hudson.Extension;
+import hudson.FilePath;
+import hudson.Launcher;
+import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import jenkins.model.Jenkins;
+import net.sf.json.JSONObject;
+
+/**
+ * Pipeline step running iTest test cases, for example 
+ * {@code def r = itest workspace: '${WORKSPACE}', testcases: 'project://a.fftc'}. 
+ * Takes the same arguments as the build step and returns a map with the 
+ * overall verdict and the status and duration of each test case. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ITestStep extends Step {
+
+	private final ITest builder;
+
+	public ITestStep(ITest builder) {
+		this.builder = builder;
+	}
+
+	/**
+	 * @return build step holding the configuration 
+	 */
+	public ITest getBuilder() {
+		return builder;
+	}
+
+	@Override
+	public StepExecution start(StepContext context) throws Exception {
+		return new Execution(builder, context);
+	}
+
+	/**
+	 * Runs the build step on the executor of the enclosing node block. 
+	 */
+	private static final class Execution 
+			extends SynchronousNonBlockingStepExecution<Map<String, Object>> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final transient ITest builder;
+
+		Execution(ITest builder, StepContext context) {
+			super(context);
+			this.builder = builder;
+		}
+
+		@Override
+		protected Map<String, Object> run() throws Exception {
+			Run<?, ?> run = getContext().get(Run.class);
+			FilePath workspace = getContext().get(FilePath.class);
+			TaskListener listener = getContext().get(TaskListener.class);
+			workspace.mkdirs();
+
+			List<TestCaseResult> results = new ArrayList<TestCaseResult>();
+			boolean passed = builder.execute(run, workspace, 
+					getContext().get(Launcher.class), listener, 
+					getContext().get(EnvVars.class), results);
+			if (!passed && Thread.interrupted()) {
+				throw new InterruptedException("iTest step aborted");
+			}
+			if (!passed) {
+				listener.error("iTest test cases did not pass");
+				run.setResult(Result.FAILURE);
+			}
+			return toMap(passed, results);
+		}
+	}
+
+	/**
+	 * @param passed
+	 * @param results
+	 * @return plain values that can be used in a sandboxed script 
+	 */
+	static Map<String, Object> toMap(boolean passed, 
+			List<TestCaseResult> results) {
+		List<Map<String, Object>> tests = new ArrayList<Map<String, Object>>();
+		int passCount = 0;
+		for (TestCaseResult result : results) {
+			tests.add(result.toMap());
+			if (result.isPassed()) {
+				passCount++;
+			}
+		}
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("passed", passed);
+		map.put("passCount", passCount);
+		map.put("failCount", results.size() - passCount);
+		map.put("results", tests);
+		return map;
+	}
+
+	@Extension
+	public static final class DescriptorImpl extends StepDescriptor {
+
+		@Override
+		public String getFunctionName() {
+			return "itest";
+		}
+
+		@Override
+		public String getDisplayName() {
+			return "Execute Spirent iTest test cases";
+		}
+
+		@Override
+		public Set<? extends Class<?>> getRequiredContext() {
+			return new HashSet<Class<?>>(Arrays.<Class<?>>asList(Run.class, 
+					FilePath.class, Launcher.class, TaskListener.class, 
+					EnvVars.class));
+		}
+
+		/**
+		 * @return descriptor of the build step, whose form and help are 
+		 * reused by the snippet generator 
+		 */
+		public ITest.Descriptor getBuilderDescriptor() {
+			return Jenkins.getInstance().getDescriptorByType(
+					ITest.Descriptor.class);
+		}
+
+		/**
+		 * Arguments are those of the build step, not wrapped in a builder 
+		 * argument. 
+		 */
+		@Override
+		public Step newInstance(Map<String, Object> arguments) 
+				throws Exception {
+			return new ITestStep(new DescribableModel<ITest>(ITest.class)
+					.instantiate(arguments));
+		}
+
+		@Override
+		public Map<String, Object> defineArguments(Step step) {
+			return new DescribableModel<ITest>(ITest.class)
+					.uninstantiate(((ITestStep) step).getBuilder());
+		}
+
+		@Override
+		public Step newInstance(StaplerRequest req, JSONObject formData) 
+				throws FormException {
+			return new ITestStep(req.bindJSON(ITest.class, formData));
+		}
+	}
+}
@@ -0,0 +1,270 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.kohsuke.stapler.StaplerRequest;
+import org.kohsuke.stapler.StaplerResponse;
+
+import hudson.model.Run;
+import jenkins.model.RunAction2;
+import net.sf.json.JSONArray;
+import net.sf.json.JSONObject;
+
+/**
+ * Timeline of the phases of the iTest steps of a run: workspace 
+ * resolution, test case discovery, iTestRT runs, report publishing and so 
+ * on. Each step prints a summary to the build log, and the timeline can 
+ * be downloaded in Chrome trace event format for a trace viewer such as 
+ * chrome://tracing. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ITestTimelineAction implements RunAction2 {
+
+	private static final int MAX_SPANS = 10000;
+
+	/**
+	 * Wall clock and monotonic clock read together, to place monotonic 
+	 * measurements on the wall clock. 
+	 */
+	private static final long BASE_MILLIS = System.currentTimeMillis();
+	private static final long BASE_NANOS = System.nanoTime();
+
+	private transient Run<?, ?> run;
+	private final List<Span> spans = new ArrayList<Span>();
+	private int steps;
+
+	/**
+	 * One timed phase. 
+	 */
+	public static final class Span {
+		private final int step;
+		private final String name;
+		private final String category;
+		private final long start;
+		private final long duration;
+		private final long threadId;
+		private final String threadName;
+
+		Span(int step, String name, String category, long startNanos, 
+				long endNanos) {
+			this.step = step;
+			this.name = name;
+			this.category = category;
+			this.start = BASE_MILLIS * 1000 + (startNanos - BASE_NANOS) / 1000;
+			this.duration = (endNanos - startNanos) / 1000;
+			Thread thread = Thread.currentThread();
+			this.threadId = thread.getId();
+			this.threadName = thread.getName();
+		}
+
+		public int getStep() {
+			return step;
+		}
+
+		public String getName() {
+			return name;
+		}
+
+		public String getCategory() {
+			return category;
+		}
+
+		/**
+		 * @return start in microseconds since the epoch 
+		 */
+		public long getStart() {
+			return start;
+		}
+
+		/**
+		 * @return duration in microseconds 
+		 */
+		public long getDuration() {
+			return duration;
+		}
+	}
+
+	public final Run<?, ?> getOwner() {
+		return run;
+	}
+
+	public void onAttached(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public void onLoad(Run<?, ?> r) {
+		this.run = r;
+	}
+
+	public String getIconFileName() {
+		return "/plugin/itest/images/24x24/Spirent_favicon.ico";
+	}
+
+	public String getDisplayName() {
+		return "iTest Timeline";
+	}
+
+	public String getUrlName() {
+		return "itestTimeline";
+	}
+
+	/**
+	 * Get the timeline of a run, attaching it on first use. Every iTest 
+	 * step of a run shares one timeline. 
+	 * @param run
+	 * @return the action of the run 
+	 */
+	static ITestTimelineAction attach(Run<?, ?> run) {
+		synchronized (ITestTimelineAction.class) {
+			ITestTimelineAction action = run.getAction(ITestTimelineAction.class);
+			if (action == null) {
+				action = new ITestTimelineAction();
+				run.addAction(action);
+			}
+			return action;
+		}
+	}
+
+	/**
+	 * @return number identifying a new step of the run 
+	 */
+	synchronized int nextStep() {
+		return ++steps;
+	}
+
+	/**
+	 * Record a phase that ends now. 
+	 * @param step
+	 * @param name
+	 * @param category kind of phase, e.g. phase, itestrt or report 
+	 * @param startNanos {@link System#nanoTime()} when the phase started 
+	 */
+	void record(int step, String name, String category, long startNanos) {
+		long endNanos = System.nanoTime();
+		ITestMetrics.get().observe(category, name, endNanos - startNanos);
+		Span span = new Span(step, name, category, startNanos, endNanos);
+		synchronized (this) {
+			if (spans.size() < MAX_SPANS) {
+				spans.add(span);
+			}
+		}
+	}
+
+	public synchronized List<Span> getSpans() {
+		return new ArrayList<Span>(spans);
+	}
+
+	/**
+	 * Print the time spent in each phase of a step. 
+	 * @param step
+	 * @param logger
+	 */
+	void printSummary(int step, PrintStream logger) {
+		Map<String, long[]> phases = new LinkedHashMap<String, long[]>();
+		long total = 0;
+		for (Span span : getSpans()) {
+			if (span.step != step) {
+				continue;
+			}
+			if (span.category.equals("step")) {
+				total = span.duration;
+				continue;
+			}
+			//runs and reports are part of a phase, one row for all of them 
+			String key = span.category.equals("itestrt") ? "  iTestRT runs" 
+					: span.category.equals("report") ? "  report copies" 
+							: span.name;
+			long[] phase = phases.get(key);
+			if (phase == null) {
+				phase = new long[2];
+				phases.put(key, phase);
+			}
+			phase[0]++;
+			phase[1] += span.duration;
+		}
+		StringBuilder table = new StringBuilder(String.format(
+				"iTest step %d phases:%n%-44s %5s %12s %7s%n", step, "Phase", 
+				"Count", "Time (ms)", "Share"));
+		for (Map.Entry<String, long[]> phase : phases.entrySet()) {
+			String name = phase.getKey();
+			if (name.length() > 44) {
+				name = name.substring(0, 41) + "...";
+			}
+			table.append(String.format("%-44s %5d %12.1f %6.1f%%%n", name, 
+					phase.getValue()[0], phase.getValue()[1] / 1000.0, 
+					total > 0 ? phase.getValue()[1] * 100.0 / total : 0.0));
+		}
+		table.append(String.format("%-44s %5s %12.1f%n", "Total", "", 
+				total / 1000.0));
+		logger.print(table);
+	}
+
+	/**
+	 * Serve the timeline in Chrome trace event format. 
+	 */
+	public void doTrace(StaplerRequest req, StaplerResponse rsp) 
+			throws IOException {
+		JSONArray events = new JSONArray();
+		Map<String, String> threads = new LinkedHashMap<String, String>();
+		for (Span span : getSpans()) {
+			threads.put(span.step + "/" + span.threadId, span.threadName);
+			events.add(new JSONObject()
+					.element("name", span.name)
+					.element("cat", span.category)
+					.element("ph", "X")
+					.element("ts", span.start)
+					.element("dur", span.duration)
+					.element("pid", span.step)
+					.element("tid", span.threadId));
+		}
+		for (Span span : getSpans()) {
+			if (threads.remove(span.step + "/" + span.threadId) != null) {
+				events.add(new JSONObject()
+						.element("name", "thread_name")
+						.element("ph", "M")
+						.element("pid", span.step)
+						.element("tid", span.threadId)
+						.element("args", new JSONObject()
+								.element("name", span.threadName)));
+			}
+		}
+		rsp.setContentType("application/json;charset=UTF-8");
+		rsp.setHeader("Content-Disposition", "attachment; filename=itest-trace-" 
+				+ (run == null ? "" : run.getNumber()) + ".json");
+		rsp.getWriter().print(new JSONObject()
+				.element("traceEvents", events)
+				.element("displayTimeUnit", "ms").toString());
+	}
+}
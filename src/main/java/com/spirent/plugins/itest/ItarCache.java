@@ -0,0 +1,271 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Agent side operations of the iTAR cache: a content hash of the iTest 
+ * workspace, used to name exported iTAR files, and eviction of the least 
+ * recently used exports once the cache outgrows its size limit. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class ItarCache {
+
+	static final String EXTENSION = ".itar";
+
+	private static final String DIGEST_FILE = "file-digests.properties";
+
+	/**
+	 * Marks the folder of an iTest project. 
+	 */
+	private static final String PROJECT_FILE = ".project";
+
+	/**
+	 * Scripts the step writes to the job workspace for each command. 
+	 */
+	private static final Pattern COMMAND_SCRIPT = 
+			Pattern.compile("itest\\d*\\.(sh|bat)");
+
+	/**
+	 * Exports used or written more recently than this may belong to a 
+	 * running build and are not evicted. 
+	 */
+	static final long IN_USE = TimeUnit.HOURS.toMillis(12);
+
+	/**
+	 * Guards the file digest cache shared by executors of the same agent. 
+	 */
+	private static final Object LOCK = new Object();
+
+	private ItarCache() {
+	}
+
+	/**
+	 * Hash of the relative path and content of every project file in an iTest 
+	 * workspace, the files below folders with a {@value #PROJECT_FILE} file. 
+	 * When the iTest workspace is the job workspace this leaves out build 
+	 * outputs. Digests of individual files are cached in the cache directory 
+	 * and only recomputed when a file's size or timestamp changes. 
+	 */
+	static final class Digest extends MasterToSlaveFileCallable<String> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String itestWorkspace;
+
+		/**
+		 * @param itestWorkspace absolute path of the iTest workspace 
+		 */
+		Digest(String itestWorkspace) {
+			this.itestWorkspace = itestWorkspace;
+		}
+
+		public String invoke(File cacheDir, VirtualChannel channel) 
+				throws IOException, InterruptedException {
+			cacheDir.mkdirs();
+			File root = new File(itestWorkspace);
+			List<String> files = new ArrayList<String>();
+			File[] projects = root.listFiles();
+			if (projects != null) {
+				for (File project : projects) {
+					if (new File(project, PROJECT_FILE).isFile()) {
+						collect(project, project.getName() + "/", files);
+					}
+				}
+			}
+			if (files.isEmpty()) {
+				//not laid out in projects, hash everything 
+				collect(root, "", files);
+			}
+			Collections.sort(files);
+
+			synchronized (LOCK) {
+				File digestFile = new File(cacheDir, DIGEST_FILE);
+				Properties digests = load(digestFile);
+				Properties current = new Properties();
+				MessageDigest workspace = TestCaseFingerprint.newDigest();
+				for (String relative : files) {
+					File file = new File(root, relative);
+					String key = file.getAbsolutePath();
+					String stamp = file.lastModified() + " " + file.length() + " ";
+					String cached = digests.getProperty(key);
+					String digest;
+					if (cached != null && cached.startsWith(stamp)) {
+						digest = cached.substring(stamp.length());
+					} else {
+						MessageDigest content = TestCaseFingerprint.newDigest();
+						TestCaseFingerprint.update(content, file);
+						digest = TestCaseFingerprint.toHex(content.digest());
+					}
+					current.setProperty(key, stamp + digest);
+					workspace.update((relative + "\0" + digest + "\n")
+							.getBytes("UTF-8"));
+				}
+
+				//keep digests of other workspaces sharing this agent 
+				String prefix = root.getAbsolutePath() + File.separator;
+				for (String key : digests.stringPropertyNames()) {
+					if (!key.startsWith(prefix)) {
+						current.setProperty(key, digests.getProperty(key));
+					}
+				}
+				store(current, digestFile);
+				return TestCaseFingerprint.toHex(workspace.digest());
+			}
+		}
+
+		/**
+		 * Project files only: skip hidden folders such as .metadata, which 
+		 * iTest rewrites constantly, the reports of earlier builds and the 
+		 * files the step itself writes. 
+		 */
+		private static void collect(File dir, String relative, 
+				List<String> files) {
+			File[] children = dir.listFiles();
+			if (children == null) {
+				return;
+			}
+			for (File child : children) {
+				String name = child.getName();
+				if (child.isDirectory()) {
+					if (!name.startsWith(".") 
+							&& !name.startsWith("jenkins_test_reports_")) {
+						collect(child, relative + name + "/", files);
+					}
+				} else if (!name.startsWith(".itest_") 
+						&& !COMMAND_SCRIPT.matcher(name).matches()) {
+					files.add(relative + name);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Delete the least recently used exports until the cache fits its limit. 
+	 * Exports touched within {@link #IN_USE}, which running builds may still 
+	 * read or be writing, are kept even if the cache stays over its limit. 
+	 * Returns the number of exports deleted, and the number and total size 
+	 * of the exports kept. 
+	 */
+	static final class Evict extends MasterToSlaveFileCallable<long[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final long limit;
+		private final String keep;
+
+		/**
+		 * @param limit maximum total size in bytes 
+		 * @param keep name of the export in use, never deleted 
+		 */
+		Evict(long limit, String keep) {
+			this.limit = limit;
+			this.keep = keep;
+		}
+
+		public long[] invoke(File cacheDir, VirtualChannel channel) 
+				throws IOException, InterruptedException {
+			File[] exports = cacheDir.listFiles();
+			if (exports == null) {
+				return new long[3];
+			}
+			List<File> candidates = new ArrayList<File>();
+			long size = 0;
+			for (File export : exports) {
+				if (export.getName().endsWith(EXTENSION)) {
+					size += export.length();
+					candidates.add(export);
+				}
+			}
+
+			//hits touch the export, so the oldest timestamp is least used 
+			Collections.sort(candidates, new Comparator<File>() {
+				public int compare(File a, File b) {
+					long diff = a.lastModified() - b.lastModified();
+					return diff < 0 ? -1 : (diff == 0 ? 0 : 1);
+				}
+			});
+			int deleted = 0;
+			long inUse = System.currentTimeMillis() - IN_USE;
+			for (File export : candidates) {
+				if (size <= limit || export.lastModified() > inUse) {
+					//sorted by age, the rest is in use as well 
+					break;
+				}
+				if (!export.getName().equals(keep)) {
+					long length = export.length();
+					if (export.delete()) {
+						size -= length;
+						deleted++;
+					}
+				}
+			}
+			return new long[] { deleted, candidates.size() - deleted, size };
+		}
+	}
+
+	private static Properties load(File file) throws IOException {
+		Properties properties = new Properties();
+		if (file.isFile()) {
+			InputStream in = new FileInputStream(file);
+			try {
+				properties.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return properties;
+	}
+
+	private static void store(Properties properties, File file) 
+			throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			properties.store(out, null);
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Expands the iTest parameter list into the combinations of a parameter 
+ * sweep. A parameter whose value contains {@code |} is swept, e.g. 
+ * {@code frameSize=64|128|1518}; every combination of the swept values is 
+ * run as a separate iTestRT invocation. {@code \|} is a literal bar that 
+ * does not sweep, e.g. {@code filter=a\|b}. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ParameterSweep {
+
+	private static final String PARAM_SEPARATOR = ",";
+	private static final char VALUE_SEPARATOR = '|';
+	private static final char ESCAPE = '\\';
+
+	private final List<Combination> combinations;
+
+	private ParameterSweep(List<Combination> combinations) {
+		this.combinations = Collections.unmodifiableList(combinations);
+	}
+
+	/**
+	 * Parse a comma separated list of parameter=value pairs. 
+	 * @param params parameters as entered in the job configuration 
+	 * @return the sweep, with a single combination if nothing is swept 
+	 * @throws IllegalArgumentException if a swept parameter has no values 
+	 */
+	public static ParameterSweep parse(String params) {
+		List<String> fixed = new ArrayList<String>();
+		List<String> sweptNames = new ArrayList<String>();
+		List<String[]> sweptValues = new ArrayList<String[]>();
+
+		if (params != null) {
+			for (String param : params.split(PARAM_SEPARATOR)) {
+				param = param.trim();
+				if (param.isEmpty()) {
+					continue;
+				}
+				int equals = param.indexOf('=');
+				if (equals < 0) {
+					fixed.add(param);
+					continue;
+				}
+				String name = param.substring(0, equals).trim();
+				List<String> values = splitValues(param.substring(equals + 1));
+				if (values == null) {
+					fixed.add(name + "=" 
+							+ unescape(param.substring(equals + 1)).trim());
+					continue;
+				}
+				if (values.isEmpty()) {
+					throw new IllegalArgumentException("No values to sweep "
+							+ "for parameter " + name + ": " + param);
+				}
+				sweptNames.add(name);
+				sweptValues.add(values.toArray(new String[values.size()]));
+			}
+		}
+
+		//cartesian product, first parameter varies slowest 
+		List<Combination> result = new ArrayList<Combination>();
+		int[] position = new int[sweptNames.size()];
+		while (true) {
+			List<String> assigned = new ArrayList<String>(fixed);
+			StringBuilder label = new StringBuilder();
+			for (int i = 0; i < position.length; i++) {
+				String pair = sweptNames.get(i) + "=" 
+						+ sweptValues.get(i)[position[i]];
+				assigned.add(pair);
+				if (label.length() > 0) {
+					label.append(PARAM_SEPARATOR);
+				}
+				label.append(pair);
+			}
+			result.add(new Combination(result.size() + 1, label.toString(), 
+					assigned));
+
+			int i = position.length - 1;
+			while (i >= 0 && position[i] + 1 >= sweptValues.get(i).length) {
+				position[i] = 0;
+				i--;
+			}
+			if (i < 0) {
+				break;
+			}
+			position[i]++;
+		}
+		return new ParameterSweep(result);
+	}
+
+	/**
+	 * @param value value of a parameter 
+	 * @return the non-empty swept values, unescaped, or null if the value 
+	 * has no unescaped separator 
+	 */
+	private static List<String> splitValues(String value) {
+		List<String> values = new ArrayList<String>();
+		StringBuilder current = new StringBuilder();
+		boolean swept = false;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (c == ESCAPE && i + 1 < value.length() 
+					&& value.charAt(i + 1) == VALUE_SEPARATOR) {
+				current.append(VALUE_SEPARATOR);
+				i++;
+			} else if (c == VALUE_SEPARATOR) {
+				swept = true;
+				addValue(values, current);
+			} else {
+				current.append(c);
+			}
+		}
+		addValue(values, current);
+		return swept ? values : null;
+	}
+
+	private static void addValue(List<String> values, StringBuilder value) {
+		if (value.toString().trim().length() > 0) {
+			values.add(value.toString().trim());
+		}
+		value.setLength(0);
+	}
+
+	private static String unescape(String value) {
+		return value.replace(String.valueOf(ESCAPE) + VALUE_SEPARATOR, 
+				String.valueOf(VALUE_SEPARATOR));
+	}
+
+	/**
+	 * @return true if more than one iTestRT invocation is required 
+	 */
+	public boolean isSweep() {
+		return combinations.size() > 1;
+	}
+
+	/**
+	 * @return the combinations to run, never empty 
+	 */
+	public List<Combination> getCombinations() {
+		return combinations;
+	}
+
+	/**
+	 * One set of parameter values passed to a single iTestRT invocation. 
+	 */
+	public static final class Combination {
+		private final int index;
+		private final String label;
+		private final List<String> params;
+
+		Combination(int index, String label, List<String> params) {
+			this.index = index;
+			this.label = label;
+			this.params = Collections.unmodifiableList(params);
+		}
+
+		/**
+		 * @return 1-based position of the combination in the sweep 
+		 */
+		public int getIndex() {
+			return index;
+		}
+
+		/**
+		 * @return swept values such as "frameSize=64,speed=10G", or an empty 
+		 * string when nothing is swept 
+		 */
+		public String getLabel() {
+			return label;
+		}
+
+		/**
+		 * @return parameter=value pairs to pass with --param 
+		 */
+		public List<String> getParams() {
+			return params;
+		}
+
+		/**
+		 * @return report sub directory for this combination 
+		 */
+		public String getDirectoryName() {
+			return "combination_" + index;
+		}
+	}
+}
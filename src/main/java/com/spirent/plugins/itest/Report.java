@@ -35,12 +35,12 @@ import org.kohsuke.stapler.StaplerRequest;
 import org.kohsuke.stapler.StaplerResponse;
 
 import hudson.FilePath;
-import hudson.model.AbstractBuild;
 import hudson.model.AbstractDescribableImpl;
 import hudson.model.AbstractItem;
 import hudson.model.AbstractProject;
 import hudson.model.Action;
 import hudson.model.DirectoryBrowserSupport;
+import hudson.model.Job;
 import hudson.model.ProminentProjectAction;
 import hudson.model.Run;
 
@@ -126,9 +126,9 @@ public class Report
         return wrapperName;
     }
 
-    public FilePath getArchiveTarget(AbstractBuild build) {
+    public FilePath getArchiveTarget(Run<?, ?> build) {
         return new FilePath(this.keepAll ? getBuildArchiveDir(build) : 
-        	getProjectArchiveDir(build.getProject()));
+        	getProjectArchiveDir(build.getParent()));
     }
 
     /**
@@ -197,11 +197,10 @@ public class Report
 
         @Override
         protected File dir() {
-            if (this.project instanceof AbstractProject) {
-                AbstractProject abstractProject = 
-                		(AbstractProject) this.project;
+            if (this.project instanceof Job) {
+                Job<?, ?> job = (Job<?, ?>) this.project;
 
-                Run run = abstractProject.getLastSuccessfulBuild();
+                Run<?, ?> run = job.getLastSuccessfulBuild();
                 if (run != null) {
                     File javadocDir = getBuildArchiveDir(run);
 
@@ -221,15 +220,15 @@ public class Report
     }
 
     public class HTMLBuildAction extends BaseHTMLAction {
-        private final AbstractBuild<?, ?> build;
+        private final Run<?, ?> build;
 
-        public HTMLBuildAction(AbstractBuild<?, ?> build, 
+        public HTMLBuildAction(Run<?, ?> build, 
         		Report actualHtmlPublisherTarget) {
             super(actualHtmlPublisherTarget);
             this.build = build;
         }
         
-        public final AbstractBuild<?,?> getOwner() {
+        public final Run<?,?> getOwner() {
         	return build;
         }
 
@@ -244,7 +243,7 @@ public class Report
         }
     }
 
-    public void handleAction(AbstractBuild<?, ?> build) {
+    public void handleAction(Run<?, ?> build) {
         // Add build action, if coverage is recorded for each build
         if (this.keepAll) {
             build.addAction(new HTMLBuildAction(build, this));
@@ -42,13 +42,12 @@ import java.util.List;
 import org.kohsuke.stapler.DataBoundConstructor;
 
 import hudson.FilePath;
-import hudson.Launcher;
 import hudson.Util;
-import hudson.model.AbstractBuild;
-import hudson.model.AbstractProject;
-import hudson.model.BuildListener;
 import hudson.model.Hudson;
+import hudson.model.Job;
 import hudson.model.Result;
+import hudson.model.Run;
+import hudson.model.TaskListener;
 
 /**
  * Saves HTML reports for the project and publishes them.
@@ -59,6 +58,8 @@ import hudson.model.Result;
 
 public class ReportPublisher {
 	private final ArrayList<Report> reportTargets;
+	private transient ITestTimelineAction timeline;
+	private transient int step;
 
 	@DataBoundConstructor
 	public ReportPublisher(List<Report> reportTargets) {
@@ -67,6 +68,17 @@ public class ReportPublisher {
 						: new ArrayList<Report>();
 	}
 
+	/**
+	 * Record the publishing of each report in a timeline. 
+	 * @param timeline
+	 * @param step
+	 * @since 1.1.2
+	 */
+	void setTimeline(ITestTimelineAction timeline, int step) {
+		this.timeline = timeline;
+		this.step = step;
+	}
+
 	public ArrayList<Report> getReportTargets() {
 		return this.reportTargets;
 	}
@@ -83,6 +95,23 @@ public class ReportPublisher {
 		return;
 	}
 
+	/**
+	 * @return total size of the files below a local directory 
+	 */
+	private static long size(File file) {
+		if (file.isFile()) {
+			return file.length();
+		}
+		long size = 0;
+		File[] children = file.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				size += size(child);
+			}
+		}
+		return size;
+	}
+
 	public ArrayList<String> readFile(String filePath) 
 			throws java.io.FileNotFoundException, java.io.IOException {
 		ArrayList<String> aList = new ArrayList<String>();
@@ -131,8 +160,8 @@ public class ReportPublisher {
 		return aList;
 	}
 
-	protected static String resolveParametersInString(AbstractBuild<?, ?> build,
-			BuildListener listener, String input) {
+	protected static String resolveParametersInString(Run<?, ?> build,
+			TaskListener listener, String input) {
 		try {
 			return build.getEnvironment(listener).expand(input);
 		} catch (Exception e) {
@@ -143,10 +172,63 @@ public class ReportPublisher {
 		return input;
 	}
 
-	public boolean perform(AbstractBuild<?, ?> build, Launcher launcher, 
-			BuildListener listener)
+	/**
+	 * Tab bar items of the wrapper page. 
+	 * @param reportFiles index names, might be a comma separated list 
+	 * @return an item per report file 
+	 * @since 1.1.2
+	 */
+	static List<String> tabItems(String reportFiles) {
+		List<String> items = new ArrayList<String>();
+		String[] csvReports = reportFiles.split(",");
+		for (int j=0; j < csvReports.length; j++) { 
+			String report = csvReports[j];
+			report = report.trim();
+
+			// Ignore blank report names caused by trailing/double commas
+			if (report.equals("")) {continue;}
+
+			String tabNo = "tab" + (j + 1);
+			// Make the report name the filename without the extension.
+			int end = report.lastIndexOf(".");
+			String reportName;
+			if (end > 0) {
+				reportName = report.substring(0, end);
+			} else {
+				reportName = report;
+			}
+
+			items.add("<li id=\"" + tabNo 
+					+ "\" class=\"unselected\" onclick=\"updateBody('" 
+					+ tabNo + "');\" value=\"" + report + "\">" + reportName 
+					+ "</li>");
+		}
+		return items;
+	}
+
+	public boolean perform(Run<?, ?> build, FilePath ws, 
+			TaskListener listener)
 					throws InterruptedException {
 		listener.getLogger().println("Archiving HTML reports...");
+		return publish(build, ws, listener, "**/*", null, true);
+	}
+
+	/**
+	 * Copy report files of every target to the build and add the report 
+	 * pages. 
+	 * @param build
+	 * @param ws
+	 * @param listener
+	 * @param includes Ant pattern of the files to copy 
+	 * @param excludes Ant pattern of files not to copy, may be null 
+	 * @param addPages false if the report pages were added before 
+	 * @return false if the reports could not be published 
+	 * @throws InterruptedException
+	 * @since 1.1.2
+	 */
+	boolean publish(Run<?, ?> build, FilePath ws, TaskListener listener, 
+			String includes, String excludes, boolean addPages) 
+					throws InterruptedException {
 
 		// Grab the contents of the header and footer as arrays
 		ArrayList<String> headerLines;
@@ -169,10 +251,10 @@ public class ReportPublisher {
 			// Create an array of lines to write out, initially the header
 			ArrayList<String> reportLines = new ArrayList<String>(headerLines);
 			Report reportTarget = this.reportTargets.get(i); 
+			long start = System.nanoTime();
 			boolean keepAll = reportTarget.getKeepAll();
 			boolean allowMissing = reportTarget.getAllowMissing();
 
-            FilePath ws = build.getWorkspace();
             if (ws == null)
                 return false;
 
@@ -187,41 +269,15 @@ public class ReportPublisher {
 			listener.getLogger().println("Archiving at " + level 
 					+ " level " + archiveDir + " to " + targetDir);
 
-			// The index name might be a comma separated list 
-			String[] csvReports = resolveParametersInString(build, listener, 
-					reportTarget.getReportFiles()).split(",");
-            //			ArrayList<String> reports = new ArrayList<String>();
-			for (int j=0; j < csvReports.length; j++) { 
-				String report = csvReports[j];
-				report = report.trim();
-
-				// Ignore blank report names caused by trailing/double commas
-				if (report.equals("")) {continue;}
-                //				reports.add(report);
-
-				String tabNo = "tab" + (j + 1);
-				// Make the report name the filename without the extension.
-				int end = report.lastIndexOf(".");
-				String reportName;
-				if (end > 0) {
-					reportName = report.substring(0, end);
-				} else {
-					reportName = report;
-				}
-
-				String tabItem = "<li id=\"" + tabNo 
-						+ "\" class=\"unselected\" onclick=\"updateBody('" 
-						+ tabNo + "');\" value=\"" + report + "\">" + reportName 
-						+ "</li>";
-				reportLines.add(tabItem);
-			}
+			reportLines.addAll(tabItems(resolveParametersInString(build, 
+					listener, reportTarget.getReportFiles())));
 
 			// Add the JS to change the link as appropriate.
             String hudsonUrl = null;
             Hudson hubInstance = Hudson.getInstance();
             if (hubInstance != null)
                 hudsonUrl = hubInstance.getRootUrl();
-			AbstractProject job = build.getProject();
+			Job<?, ?> job = build.getParent();
 			reportLines.add("<script type=\"text/javascript\">"
 					+ "document.getElementById(\"hudson_link\").innerHTML=\""
 					+ "Back to " + job.getName() + "\";</script>");
@@ -255,7 +311,14 @@ public class ReportPublisher {
 					targetDir.deleteRecursive();
 				}
 
-				if (archiveDir.copyRecursiveTo("**/*", targetDir) == 0 
+				long before = size(new File(targetDir.getRemote()));
+				int copied = archiveDir.copyRecursiveTo(includes, excludes, 
+						targetDir);
+				if (copied > 0) {
+					ITestMetrics.get().reportPublished(
+							size(new File(targetDir.getRemote())) - before);
+				}
+				if (copied == 0 
 						&& !allowMissing) {
 					listener.error("Directory '" + archiveDir + "' exists but "
 							+ "failed copying to '" + targetDir + "'.");
@@ -283,7 +346,7 @@ public class ReportPublisher {
 			reportLines.addAll(footerLines);
 			// And write this as the index
 			try {
-				if(archiveDir.exists())
+				if(addPages && archiveDir.exists())
 				{
 					reportTarget.handleAction(build);
 					writeFile(reportLines, new File(targetDir.getRemote(), 
@@ -293,6 +356,10 @@ public class ReportPublisher {
 				e.printStackTrace();
                 return false;
 			}
+			if (timeline != null) {
+				timeline.record(step, "Publish " + reportTarget.getReportName(), 
+						"report", start);
+			}
 		}
 		return true;
 	}
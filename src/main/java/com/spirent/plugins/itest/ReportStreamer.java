@@ -0,0 +1,192 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import hudson.FilePath;
+import hudson.model.Run;
+import hudson.model.TaskListener;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Publishes the HTML report of each test case in the background as soon as 
+ * iTestRT reports its execution status, instead of publishing every report 
+ * at the end of the run. A report iTestRT has not written yet is checked 
+ * again later instead of holding up the reports queued after it. Reports 
+ * that are not published by the end of the run, such as those of timed out 
+ * test cases, are left to the final publishing. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class ReportStreamer {
+
+	private static final long POLL_INTERVAL = 2000;
+	private static final int POLL_ATTEMPTS = 30;
+	private static final long FINISH_TIMEOUT = 10;
+
+	private final Run<?, ?> run;
+	private final FilePath workspace;
+	private final TaskListener listener;
+	private final Map<String, Report> targets;
+	private final Set<String> published = 
+			Collections.synchronizedSet(new HashSet<String>());
+	private final ScheduledThreadPoolExecutor executor = 
+			new ScheduledThreadPoolExecutor(1, new NamingThreadFactory(
+					new DaemonThreadFactory(), "iTest report streamer"));
+	private ITestTimelineAction timeline;
+	private int step;
+
+	/**
+	 * @param run
+	 * @param workspace
+	 * @param listener
+	 * @param targets report of each test case, by {@link #key} 
+	 */
+	ReportStreamer(Run<?, ?> run, FilePath workspace, TaskListener listener, 
+			Map<String, Report> targets) {
+		this.run = run;
+		this.workspace = workspace;
+		this.listener = listener;
+		this.targets = targets;
+		//checks still waiting for a report are left to the final publishing 
+		executor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+	}
+
+	/**
+	 * Record the publishing of each report in a timeline. 
+	 * @param timeline
+	 * @param step
+	 */
+	void setTimeline(ITestTimelineAction timeline, int step) {
+		this.timeline = timeline;
+		this.step = step;
+	}
+
+	static String key(String combination, String test) {
+		return combination + "\t" + test;
+	}
+
+	/**
+	 * Queue the report of a test case iTestRT completed. 
+	 * @param combination
+	 * @param test
+	 */
+	void testFinished(String combination, String test) {
+		final String key = key(combination, test);
+		final Report target = targets.get(key);
+		if (target == null || executor.isShutdown()) {
+			return;
+		}
+		schedule(new Publish(key, target), 0);
+	}
+
+	private void schedule(Publish publish, long delay) {
+		try {
+			executor.schedule(publish, delay, TimeUnit.MILLISECONDS);
+		} catch (RejectedExecutionException e) {
+			//finished, left to the final publishing 
+		}
+	}
+
+	/**
+	 * Copies one report once iTestRT has written it, checking again later 
+	 * while it is missing. 
+	 */
+	private final class Publish implements Runnable {
+		private final String key;
+		private final Report target;
+		private int attempts;
+
+		Publish(String key, Report target) {
+			this.key = key;
+			this.target = target;
+		}
+
+		public void run() {
+			FilePath file = workspace.child(target.getReportDir())
+					.child(target.getReportFiles());
+			try {
+				if (!file.exists()) {
+					if (++attempts < POLL_ATTEMPTS) {
+						schedule(this, POLL_INTERVAL);
+					}
+					return;
+				}
+				if (publish(target)) {
+					published.add(key);
+				}
+			} catch (IOException e) {
+				//left to the final publishing 
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	/**
+	 * Copy one report iTestRT has written. 
+	 */
+	private boolean publish(Report target) throws InterruptedException {
+		ReportPublisher publisher = 
+				new ReportPublisher(Collections.singletonList(target));
+		publisher.setTimeline(timeline, step);
+		return publisher.publish(run, workspace, listener, 
+				target.getReportFiles(), null, true);
+	}
+
+	/**
+	 * Wait for queued reports to be published. 
+	 * @return keys of the test cases whose reports were published 
+	 * @throws InterruptedException
+	 */
+	Set<String> finish() throws InterruptedException {
+		executor.shutdown();
+		if (!executor.awaitTermination(FINISH_TIMEOUT, TimeUnit.MINUTES)) {
+			executor.shutdownNow();
+		}
+		synchronized (published) {
+			return new HashSet<String>(published);
+		}
+	}
+
+	/**
+	 * Stop publishing, e.g. when the build was aborted. Does nothing after 
+	 * {@link #finish}. 
+	 */
+	void abort() {
+		executor.shutdownNow();
+	}
+}
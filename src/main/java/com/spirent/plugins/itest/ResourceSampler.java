@@ -0,0 +1,315 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import hudson.FilePath;
+import hudson.model.TaskListener;
+import hudson.remoting.VirtualChannel;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Samples CPU, resident memory and thread count of the iTestRT process 
+ * trees of a step. Every command the step launches carries a marker in its 
+ * environment, which its child processes inherit, the way Jenkins finds 
+ * the processes of a build to kill. The agent sums the usage of all marked 
+ * processes from /proc, so sampling only works on Linux nodes. When the 
+ * memory limit is exceeded, the threads waiting for iTestRT are 
+ * interrupted, which kills the process trees. Samples are taken on a 
+ * thread of the sampler, and a probe that does not answer within the 
+ * sampling interval is abandoned, so a slow agent cannot hold up other 
+ * work. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class ResourceSampler implements Runnable {
+
+	/**
+	 * Clock ticks per second of /proc/[pid]/stat, USER_HZ on every Linux 
+	 * architecture Jenkins runs on. 
+	 */
+	private static final double TICKS_PER_SECOND = 100;
+
+	private final String marker;
+	private final ITestResourceAction resources;
+	private final FilePath workspace;
+	private final TaskListener listener;
+	private final long limitKb;
+	private final Set<Thread> workers = new HashSet<Thread>();
+
+	private ScheduledExecutorService sampling;
+	private long timeout;
+	private boolean probeFailed;
+	private boolean stopped;
+	private boolean limitExceeded;
+	private long lastTicks = -1;
+	private long lastTime;
+
+	/**
+	 * @param resources receives the samples 
+	 * @param marker value of {@link ITest#VAR_MARKER} in the environment of 
+	 * the processes of the step 
+	 * @param workspace workspace on the node running iTestRT 
+	 * @param listener
+	 * @param limitMb resident memory allowed, 0 for no limit 
+	 */
+	ResourceSampler(ITestResourceAction resources, String marker, 
+			FilePath workspace, TaskListener listener, int limitMb) {
+		this.resources = resources;
+		this.marker = marker;
+		this.workspace = workspace;
+		this.listener = listener;
+		this.limitKb = limitMb * 1024L;
+	}
+
+	/**
+	 * @param interval seconds between samples 
+	 */
+	synchronized void start(int interval) {
+		timeout = TimeUnit.SECONDS.toMillis(interval);
+		sampling = Executors.newSingleThreadScheduledExecutor(
+				new NamingThreadFactory(new DaemonThreadFactory(), 
+						"iTest resource sampler"));
+		sampling.scheduleWithFixedDelay(this, 0, interval, TimeUnit.SECONDS);
+	}
+
+	/**
+	 * Stop sampling. 
+	 */
+	synchronized void stop() {
+		stopped = true;
+		if (sampling != null) {
+			sampling.shutdownNow();
+		}
+	}
+
+	/**
+	 * Interrupt a thread waiting for iTestRT when the memory limit is 
+	 * exceeded, right away if it already was. 
+	 * @param worker
+	 */
+	synchronized void watch(Thread worker) {
+		workers.add(worker);
+		if (limitExceeded) {
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * Stop watching a thread. Clears an interrupt that arrived after iTestRT 
+	 * ended. 
+	 * @param worker
+	 */
+	synchronized void unwatch(Thread worker) {
+		workers.remove(worker);
+		if (limitExceeded && worker == Thread.currentThread()) {
+			Thread.interrupted();
+		}
+	}
+
+	/**
+	 * @return true if the step was stopped for exceeding the memory limit 
+	 */
+	synchronized boolean isLimitExceeded() {
+		return limitExceeded;
+	}
+
+	public void run() {
+		synchronized (this) {
+			if (stopped) {
+				return;
+			}
+		}
+		long[] usage;
+		Future<long[]> probe = null;
+		try {
+			probe = workspace.actAsync(new Probe(marker));
+			usage = probe.get(timeout, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			probe.cancel(true);
+			probeFailed("Resource sampling took longer than the sampling "
+					+ "interval, skipping samples", null);
+			return;
+		} catch (ExecutionException e) {
+			probeFailed("Resource sampling failed", e.getCause());
+			return;
+		} catch (IOException e) {
+			probeFailed("Resource sampling failed", e);
+			return;
+		} catch (InterruptedException e) {
+			return;
+		}
+		if (usage == null) {
+			listener.getLogger().println("Resource sampling needs /proc, "
+					+ "not available on this node");
+			stop();
+			return;
+		}
+		long now = System.currentTimeMillis();
+		synchronized (this) {
+			if (stopped) {
+				return;
+			}
+			//processes that ended take their ticks with them 
+			double cpu = lastTicks < 0 || usage[0] < lastTicks 
+					|| now <= lastTime ? 0 : (usage[0] - lastTicks) * 100 
+							/ TICKS_PER_SECOND / ((now - lastTime) / 1000.0);
+			lastTicks = usage[0];
+			lastTime = now;
+			resources.add(now, cpu, usage[1], (int) usage[2]);
+			if (limitKb > 0 && usage[1] > limitKb && !limitExceeded) {
+				limitExceeded = true;
+				listener.error(String.format("iTestRT uses %d MB of memory, "
+						+ "more than the limit of %d MB, stopping the step", 
+						usage[1] / 1024, limitKb / 1024));
+				for (Thread worker : workers) {
+					worker.interrupt();
+				}
+			}
+		}
+	}
+
+	/**
+	 * Tell the build log about the first failed sample only. 
+	 * @param message
+	 * @param cause may be null 
+	 */
+	private void probeFailed(String message, Throwable cause) {
+		synchronized (this) {
+			if (probeFailed || stopped) {
+				return;
+			}
+			probeFailed = true;
+		}
+		if (cause == null) {
+			listener.error(message);
+		} else {
+			cause.printStackTrace(listener.error(message));
+		}
+	}
+
+	/**
+	 * Sums the usage of the processes carrying a marker. 
+	 */
+	static final class Probe extends MasterToSlaveFileCallable<long[]> {
+
+		private static final long serialVersionUID = 1L;
+
+		private final String entry;
+
+		Probe(String marker) {
+			this.entry = ITest.VAR_MARKER + "=" + marker;
+		}
+
+		/**
+		 * @return CPU ticks, resident memory in kB and threads, or null if 
+		 * the node has no /proc 
+		 */
+		public long[] invoke(File ws, VirtualChannel channel) 
+				throws IOException, InterruptedException {
+			File[] processes = new File("/proc").listFiles();
+			if (processes == null || !new File("/proc/self/stat").isFile()) {
+				return null;
+			}
+			long[] usage = new long[3];
+			for (File process : processes) {
+				if (!process.getName().matches("\\d+")) {
+					continue;
+				}
+				try {
+					if (!isMarked(read(new File(process, "environ")))) {
+						continue;
+					}
+					String stat = new String(read(new File(process, "stat")), 
+							"US-ASCII");
+					//fields after the command name, which may contain spaces 
+					String[] fields = stat.substring(stat.lastIndexOf(')') + 2)
+							.split(" ");
+					usage[0] += Long.parseLong(fields[11]) 
+							+ Long.parseLong(fields[12]);
+					usage[2] += Long.parseLong(fields[17]);
+					for (String line : new String(read(new File(process, 
+							"status")), "US-ASCII").split("\n")) {
+						if (line.startsWith("VmRSS:")) {
+							usage[1] += Long.parseLong(line.substring(6)
+									.replace("kB", "").trim());
+						}
+					}
+				} catch (IOException e) {
+					//ended or belongs to another user 
+				} catch (RuntimeException e) {
+					//ended while being read 
+				}
+			}
+			return usage;
+		}
+
+		private boolean isMarked(byte[] environ) throws IOException {
+			int start = 0;
+			for (int i = 0; i <= environ.length; i++) {
+				if (i == environ.length || environ[i] == 0) {
+					if (new String(environ, start, i - start, "UTF-8")
+							.equals(entry)) {
+						return true;
+					}
+					start = i + 1;
+				}
+			}
+			return false;
+		}
+
+		private static byte[] read(File file) throws IOException {
+			InputStream in = new FileInputStream(file);
+			try {
+				ByteArrayOutputStream out = new ByteArrayOutputStream();
+				byte[] buffer = new byte[4096];
+				int n;
+				while ((n = in.read(buffer)) > 0) {
+					out.write(buffer, 0, n);
+				}
+				return out.toByteArray();
+			} finally {
+				in.close();
+			}
+		}
+	}
+}
@@ -0,0 +1,168 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+
+/**
+ * Project level record of the test case fingerprints that passed, with the 
+ * build that ran them. Used to skip test cases whose inputs are unchanged 
+ * since they last passed. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class ResultCache {
+
+	private static final String FILE_NAME = "itest-result-cache.properties";
+	private static final int MAX_ENTRIES = 20000;
+
+	/**
+	 * Guards read-modify-write of the cache files by concurrent builds. 
+	 */
+	private static final Object LOCK = new Object();
+
+	private final File file;
+
+	/**
+	 * @param projectDir root directory of the project on the controller 
+	 */
+	ResultCache(File projectDir) {
+		this.file = new File(projectDir, FILE_NAME);
+	}
+
+	/**
+	 * Look up passing results. 
+	 * @param fingerprints
+	 * @return {build number, duration} of the passing run, by fingerprint 
+	 * @throws IOException
+	 */
+	Map<String, long[]> lookup(Collection<String> fingerprints) 
+			throws IOException {
+		Map<String, long[]> found = new HashMap<String, long[]>();
+		synchronized (LOCK) {
+			Properties entries = read();
+			for (String fingerprint : fingerprints) {
+				long[] entry = parse(entries.getProperty(fingerprint));
+				if (entry != null) {
+					found.put(fingerprint, entry);
+				}
+			}
+		}
+		return found;
+	}
+
+	/**
+	 * Remember fingerprints that passed and forget those that did not. 
+	 * @param passed duration of each passing fingerprint 
+	 * @param failed fingerprints that did not pass 
+	 * @param buildNumber build that ran the test cases 
+	 * @throws IOException
+	 */
+	void update(Map<String, Long> passed, Collection<String> failed, 
+			int buildNumber) throws IOException {
+		synchronized (LOCK) {
+			Properties entries = read();
+			for (Map.Entry<String, Long> entry : passed.entrySet()) {
+				entries.setProperty(entry.getKey(), 
+						buildNumber + " " + entry.getValue());
+			}
+			for (String fingerprint : failed) {
+				entries.remove(fingerprint);
+			}
+			prune(entries);
+			write(entries);
+		}
+	}
+
+	/**
+	 * Drop the entries of the oldest builds once the cache is full. 
+	 */
+	private static void prune(final Properties entries) {
+		if (entries.size() <= MAX_ENTRIES) {
+			return;
+		}
+		List<String> keys = new ArrayList<String>(entries.stringPropertyNames());
+		Collections.sort(keys, new Comparator<String>() {
+			public int compare(String a, String b) {
+				long buildA = parse(entries.getProperty(a))[0];
+				long buildB = parse(entries.getProperty(b))[0];
+				return buildA < buildB ? -1 : (buildA == buildB ? 0 : 1);
+			}
+		});
+		for (String key : keys.subList(0, keys.size() - MAX_ENTRIES)) {
+			entries.remove(key);
+		}
+	}
+
+	private static long[] parse(String value) {
+		if (value == null) {
+			return null;
+		}
+		String[] fields = value.trim().split(" ");
+		try {
+			return new long[] { Long.parseLong(fields[0]), 
+					fields.length > 1 ? Long.parseLong(fields[1]) : 0 };
+		} catch (NumberFormatException e) {
+			return new long[] { 0, 0 };
+		}
+	}
+
+	private Properties read() throws IOException {
+		Properties entries = new Properties();
+		if (file.isFile()) {
+			InputStream in = new FileInputStream(file);
+			try {
+				entries.load(in);
+			} finally {
+				in.close();
+			}
+		}
+		return entries;
+	}
+
+	private void write(Properties entries) throws IOException {
+		OutputStream out = new FileOutputStream(file);
+		try {
+			entries.store(out, "iTest results by test case fingerprint");
+		} finally {
+			out.close();
+		}
+	}
+}
@@ -0,0 +1,433 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Timestamp;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.init.InitMilestone;
+import hudson.init.Initializer;
+import hudson.model.Run;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+import jenkins.model.Jenkins;
+
+/**
+ * Uploads test case results to the test report database from the 
+ * controller. Results are first written to a spool file, so a build never 
+ * waits for the database, and a background writer inserts each spool file 
+ * in one batched transaction, deleting it once committed. While the 
+ * database is unreachable the spool is kept and retried with exponential 
+ * backoff, also across restarts. A spool file the database rejects is 
+ * moved to the failed directory of the spool so the files after it are 
+ * still uploaded. Uploads run on a thread of their own, so a slow 
+ * database does not hold up other background tasks. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public final class ResultUploader {
+
+	private static final Logger LOGGER = 
+			Logger.getLogger(ResultUploader.class.getName());
+
+	static final String TABLE = "itest_jenkins_result";
+	private static final String SPOOL_DIR = "itest-result-spool";
+	private static final String FAILED_DIR = "failed";
+	private static final String CONNECTION_ERRORS = "08";
+	private static final String EXTENSION = ".tsv";
+	private static final String UTF8 = "UTF-8";
+	private static final int BATCH_SIZE = 500;
+	private static final long MIN_BACKOFF = TimeUnit.SECONDS.toMillis(5);
+	private static final long MAX_BACKOFF = TimeUnit.MINUTES.toMillis(10);
+
+	private static final ResultUploader INSTANCE = new ResultUploader();
+
+	private final ScheduledExecutorService writer = 
+			Executors.newSingleThreadScheduledExecutor(new NamingThreadFactory(
+					new DaemonThreadFactory(), "iTest result uploader"));
+	private final AtomicBoolean scheduled = new AtomicBoolean();
+	private final AtomicLong sequence = new AtomicLong();
+	private long backoff = MIN_BACKOFF;
+	/**
+	 * Pool of the database the table was created in. 
+	 */
+	private ConnectionPool tableReady;
+
+	private ResultUploader() {
+	}
+
+	static ResultUploader get() {
+		return INSTANCE;
+	}
+
+	/**
+	 * Resume uploading results spooled before a restart. 
+	 */
+	@Initializer(after = InitMilestone.JOB_LOADED)
+	public static void drainOnStartup() {
+		INSTANCE.schedule(0);
+	}
+
+	private File getSpoolDir() {
+		return new File(Jenkins.getInstance().getRootDir(), SPOOL_DIR);
+	}
+
+	/**
+	 * @return number of spooled result sets not uploaded yet 
+	 */
+	int getPending() {
+		return listSpool().length;
+	}
+
+	/**
+	 * Spool results for upload and wake the writer. Only local disk is 
+	 * touched on the calling thread. 
+	 * @param run build that produced the results 
+	 * @param tag custom tag of the build step, may be empty 
+	 * @param results
+	 * @throws IOException if the spool file cannot be written 
+	 */
+	void submit(Run<?, ?> run, String tag, List<TestCaseResult> results) 
+			throws IOException {
+		File dir = getSpoolDir();
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		//names sort in submission order 
+		String name = String.format("%013d-%06d", System.currentTimeMillis(), 
+				sequence.incrementAndGet() % 1000000);
+		File partial = new File(dir, name + ".tmp");
+		Writer out = new OutputStreamWriter(new FileOutputStream(partial), UTF8);
+		try {
+			String job = run.getParent().getFullName();
+			for (TestCaseResult result : results) {
+				out.write(clean(job) + "\t" + run.getNumber() + "\t" 
+						+ clean(tag) + "\t" + clean(result.getCombination()) 
+						+ "\t" + clean(result.getTestCase()) + "\t" 
+						+ clean(result.getStatus()) + "\t" 
+						+ result.getDuration() + "\t" + result.getAttempts() 
+						+ "\t" + (result.isFlaky() ? 1 : 0) + "\t" 
+						+ result.getCachedFrom() + "\n");
+			}
+		} finally {
+			out.close();
+		}
+		//a spool file is complete once it has its final name 
+		if (!partial.renameTo(new File(dir, name + EXTENSION))) {
+			partial.delete();
+			throw new IOException("Cannot spool results to " + dir);
+		}
+		schedule(0);
+	}
+
+	private static String clean(String value) {
+		return value == null ? "" : value.replace('\t', ' ').replace('\n', ' ')
+				.replace('\r', ' ');
+	}
+
+	private File[] listSpool() {
+		File[] files = getSpoolDir().listFiles();
+		if (files == null) {
+			return new File[0];
+		}
+		List<File> spooled = new java.util.ArrayList<File>();
+		for (File file : files) {
+			if (file.getName().endsWith(EXTENSION)) {
+				spooled.add(file);
+			}
+		}
+		File[] sorted = spooled.toArray(new File[spooled.size()]);
+		Arrays.sort(sorted);
+		return sorted;
+	}
+
+	private void schedule(long delay) {
+		if (!scheduled.compareAndSet(false, true)) {
+			return;
+		}
+		writer.schedule(new Runnable() {
+			public void run() {
+				drain();
+			}
+		}, delay, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Upload every spool file, oldest first. On failure the remaining files 
+	 * stay spooled and the drain is retried later. 
+	 */
+	private synchronized void drain() {
+		boolean failed = false;
+		try {
+			File[] files = listSpool();
+			GlobalConfig global = GlobalConfig.get();
+			if (files.length == 0 || !global.isUploadResults()) {
+				return;
+			}
+			//a pool rebuilt meanwhile only causes one more check for the table 
+			ConnectionPool pool = ConnectionPool.get();
+			Connection connection = global.openConnection();
+			try {
+				createTable(connection, pool);
+				for (File file : files) {
+					try {
+						upload(connection, file);
+					} catch (SQLException e) {
+						if (isConnectionFailure(connection, e)) {
+							throw e;
+						}
+						quarantine(file, e);
+						continue;
+					} catch (IOException e) {
+						quarantine(file, e);
+						continue;
+					}
+					if (!file.delete()) {
+						LOGGER.warning("Cannot delete uploaded " + file);
+					}
+				}
+			} finally {
+				connection.close();
+			}
+			backoff = MIN_BACKOFF;
+		} catch (Exception e) {
+			failed = true;
+			LOGGER.log(Level.WARNING, "iTest result upload failed, retrying in " 
+					+ backoff / 1000 + " s", e);
+		} finally {
+			scheduled.set(false);
+		}
+		if (failed) {
+			long delay = backoff;
+			backoff = Math.min(backoff * 2, MAX_BACKOFF);
+			schedule(delay);
+		} else if (listSpool().length > 0) {
+			//spooled while draining 
+			schedule(0);
+		}
+	}
+
+	/**
+	 * @return true if the upload failed because the database cannot be 
+	 * reached, rather than because of the data 
+	 */
+	private static boolean isConnectionFailure(Connection connection, 
+			SQLException e) {
+		String state = e.getSQLState();
+		return state != null && state.startsWith(CONNECTION_ERRORS) 
+				|| !ConnectionPool.isValid(connection);
+	}
+
+	/**
+	 * Move a spool file the database rejected out of the queue. 
+	 */
+	private void quarantine(File file, Exception e) {
+		File failed = new File(getSpoolDir(), FAILED_DIR);
+		LOGGER.log(Level.WARNING, "Cannot upload iTest results from " + file 
+				+ ", moving it to " + failed, e);
+		if ((failed.isDirectory() || failed.mkdirs()) 
+				&& file.renameTo(new File(failed, file.getName()))) {
+			return;
+		}
+		LOGGER.warning("Cannot move " + file + ", deleting it");
+		if (!file.delete()) {
+			LOGGER.warning("Cannot delete " + file);
+		}
+	}
+
+	/**
+	 * Create the results table on first use of a database, unless it 
+	 * exists. 
+	 * @param pool pool the connection was borrowed from 
+	 * @throws SQLException if the table cannot be created 
+	 */
+	private void createTable(Connection connection, ConnectionPool pool) 
+			throws SQLException {
+		if (pool != null && tableReady == pool) {
+			return;
+		}
+		if (tableExists(connection)) {
+			tableReady = pool;
+			return;
+		}
+		connection.setAutoCommit(true);
+		Statement statement = connection.createStatement();
+		try {
+			statement.executeUpdate("CREATE TABLE " + TABLE + " ("
+					+ "batch_id VARCHAR(64) NOT NULL, "
+					+ "job_name VARCHAR(255) NOT NULL, "
+					+ "build_number INTEGER NOT NULL, "
+					+ "custom_tag VARCHAR(255), "
+					+ "combination VARCHAR(1024), "
+					+ "test_case VARCHAR(1024) NOT NULL, "
+					+ "status VARCHAR(32) NOT NULL, "
+					+ "duration_ms BIGINT NOT NULL, "
+					+ "attempts INTEGER NOT NULL, "
+					+ "flaky SMALLINT NOT NULL, "
+					+ "cached_from INTEGER NOT NULL, "
+					+ "recorded_at TIMESTAMP NOT NULL)");
+			statement.executeUpdate("CREATE INDEX " + TABLE + "_batch ON " 
+					+ TABLE + " (batch_id)");
+			statement.executeUpdate("CREATE INDEX " + TABLE + "_job ON " 
+					+ TABLE + " (job_name, recorded_at)");
+		} finally {
+			statement.close();
+		}
+		tableReady = pool;
+	}
+
+	/**
+	 * @return true if the results table is in the database of the 
+	 * connection, whichever case the database stores names in 
+	 */
+	private static boolean tableExists(Connection connection) 
+			throws SQLException {
+		DatabaseMetaData meta = connection.getMetaData();
+		for (String name : new String[] { TABLE, 
+				TABLE.toUpperCase(Locale.ENGLISH) }) {
+			ResultSet tables = meta.getTables(connection.getCatalog(), null, 
+					name, new String[] { "TABLE" });
+			try {
+				if (tables.next()) {
+					return true;
+				}
+			} finally {
+				tables.close();
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Insert one spool file in a single transaction. A file whose batch is 
+	 * already in the table was committed before a crash and is skipped. 
+	 */
+	private void upload(Connection connection, File file) 
+			throws SQLException, IOException {
+		String batchId = file.getName();
+		connection.setAutoCommit(false);
+		try {
+			PreparedStatement exists = connection.prepareStatement(
+					"SELECT COUNT(*) FROM " + TABLE + " WHERE batch_id = ?");
+			try {
+				exists.setString(1, batchId);
+				ResultSet rs = exists.executeQuery();
+				if (rs.next() && rs.getInt(1) > 0) {
+					connection.rollback();
+					return;
+				}
+			} finally {
+				exists.close();
+			}
+
+			PreparedStatement insert = connection.prepareStatement(
+					"INSERT INTO " + TABLE + " (batch_id, job_name, "
+					+ "build_number, custom_tag, combination, test_case, "
+					+ "status, duration_ms, attempts, flaky, cached_from, "
+					+ "recorded_at) VALUES (?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?, ?)");
+			Timestamp recorded = new Timestamp(file.lastModified());
+			Set<String> jobs = new HashSet<String>();
+			int rows = 0;
+			BufferedReader in = new BufferedReader(new InputStreamReader(
+					new FileInputStream(file), UTF8));
+			try {
+				String line;
+				while ((line = in.readLine()) != null) {
+					String[] fields = line.split("\t", -1);
+					if (fields.length < 10) {
+						LOGGER.warning("Skipping malformed line in " + file);
+						continue;
+					}
+					try {
+						insert.setInt(3, Integer.parseInt(fields[1]));
+						insert.setLong(8, Long.parseLong(fields[6]));
+						insert.setInt(9, Integer.parseInt(fields[7]));
+						insert.setInt(10, Integer.parseInt(fields[8]));
+						insert.setInt(11, Integer.parseInt(fields[9]));
+					} catch (NumberFormatException e) {
+						LOGGER.warning("Skipping malformed line in " + file);
+						continue;
+					}
+					jobs.add(fields[0]);
+					insert.setString(1, batchId);
+					insert.setString(2, fields[0]);
+					insert.setString(4, fields[2]);
+					insert.setString(5, fields[3]);
+					insert.setString(6, fields[4]);
+					insert.setString(7, fields[5]);
+					insert.setTimestamp(12, recorded);
+					insert.addBatch();
+					if (++rows % BATCH_SIZE == 0) {
+						insert.executeBatch();
+					}
+				}
+				if (rows % BATCH_SIZE != 0) {
+					insert.executeBatch();
+				}
+			} finally {
+				in.close();
+				insert.close();
+			}
+			connection.commit();
+			for (String job : jobs) {
+				TestHistory.invalidate(job);
+			}
+			LOGGER.fine("Uploaded " + rows + " iTest results from " + batchId);
+		} catch (SQLException e) {
+			connection.rollback();
+			throw e;
+		} catch (IOException e) {
+			connection.rollback();
+			throw e;
+		}
+	}
+}
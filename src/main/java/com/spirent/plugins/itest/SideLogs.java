@@ -0,0 +1,129 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import hudson.Util;
+
+/**
+ * Compressed logs with the full iTestRT output of each test case, kept in 
+ * the build directory so the build log only needs the summary lines. 
+ * Reruns of a test case append to its log. Output that belongs to no test 
+ * case goes to a general log per iTestRT run, so concurrent runs never 
+ * append to the same file. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class SideLogs {
+
+	static final String DIRECTORY = "itest-logs";
+	private static final String EXTENSION = ".log.gz";
+	private static final int MAX_NAME = 180;
+	private static final int HASH_LENGTH = 16;
+
+	/**
+	 * Prefix of the logs of output that belongs to no test case. 
+	 */
+	static final String GENERAL = "itestrt";
+	private static final AtomicInteger generalLogs = new AtomicInteger();
+
+	private final File dir;
+
+	/**
+	 * @param buildDir root directory of the build on the controller 
+	 */
+	SideLogs(File buildDir) {
+		this.dir = new File(buildDir, DIRECTORY);
+	}
+
+	/**
+	 * @return name of a new general log, for the output of one iTestRT run 
+	 * that belongs to no test case 
+	 */
+	static String general() {
+		return GENERAL + "-" + generalLogs.incrementAndGet();
+	}
+
+	/**
+	 * @return name of the log of a test case, safe as a file name and 
+	 * distinct for names differing only in characters replaced 
+	 */
+	static String fileName(String combination, String test) {
+		String key = (Util.fixNull(combination).isEmpty() ? "" 
+				: combination + "__") + test;
+		String name = key.replaceAll("[^A-Za-z0-9._-]", "_");
+		if (name.length() > MAX_NAME) {
+			name = name.substring(name.length() - MAX_NAME);
+		}
+		return name + "-" + Util.getDigestOf(key).substring(0, HASH_LENGTH) 
+				+ EXTENSION;
+	}
+
+	/**
+	 * Open the log of a test case for appending. 
+	 * @param combination
+	 * @param test
+	 * @return compressing stream, to be closed by the caller 
+	 * @throws IOException
+	 */
+	OutputStream open(String combination, String test) throws IOException {
+		if (!dir.isDirectory() && !dir.mkdirs()) {
+			throw new IOException("Cannot create " + dir);
+		}
+		//concatenated gzip members read back as one stream 
+		return new GZIPOutputStream(new FileOutputStream(
+				new File(dir, fileName(combination, test)), true));
+	}
+
+	/**
+	 * @return true if the test case has a log 
+	 */
+	boolean exists(String combination, String test) {
+		return new File(dir, fileName(combination, test)).isFile();
+	}
+
+	/**
+	 * Open the decompressed log of a test case. 
+	 * @param combination
+	 * @param test
+	 * @return log text, to be closed by the caller 
+	 * @throws IOException if there is no log 
+	 */
+	InputStream read(String combination, String test) throws IOException {
+		return new GZIPInputStream(new FileInputStream(
+				new File(dir, fileName(combination, test))));
+	}
+}
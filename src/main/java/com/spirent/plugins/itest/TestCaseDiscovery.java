@@ -0,0 +1,247 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Expands test case patterns such as {@code project://regression/**}{@code 
+ * /*.fftc} into the matching test cases by walking the iTest workspace on 
+ * the agent. Listings are cached in a {@link TestCaseIndex} kept in the 
+ * job workspace. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class TestCaseDiscovery 
+	extends MasterToSlaveFileCallable<TestCaseDiscovery.Result> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String INDEX_FILE = ".itest_testcase_index";
+	private static final String URI_PROJECT = "project://";
+	private static final String URI_FILE = "file:";
+	private static final String VAR_WORKSPACE = "${WORKSPACE}";
+
+	private final String itestWorkspace;
+	private final List<String> patterns;
+	private final List<String> excludes;
+	private final List<String> tags;
+
+	/**
+	 * @param itestWorkspace iTest workspace containing the projects 
+	 * @param patterns test case patterns to expand 
+	 * @param excludes patterns of test cases to leave out 
+	 * @param tags if not empty, only test cases declaring one of these tags 
+	 */
+	public TestCaseDiscovery(String itestWorkspace, List<String> patterns, 
+			List<String> excludes, List<String> tags) {
+		this.itestWorkspace = itestWorkspace;
+		this.patterns = new ArrayList<String>(patterns);
+		this.excludes = new ArrayList<String>(excludes);
+		this.tags = new ArrayList<String>(tags);
+	}
+
+	/**
+	 * @param testCase entry of the test case list 
+	 * @return true if the entry has to be expanded 
+	 */
+	public static boolean isPattern(String testCase) {
+		return testCase.indexOf('*') >= 0 || testCase.indexOf('?') >= 0;
+	}
+
+	public Result invoke(File workspace, VirtualChannel channel) 
+			throws IOException, InterruptedException {
+		File indexFile = new File(workspace, INDEX_FILE);
+		TestCaseIndex index = TestCaseIndex.load(indexFile);
+		Set<String> found = new LinkedHashSet<String>();
+		List<Pattern> excluded = new ArrayList<Pattern>();
+		for (String exclude : excludes) {
+			excluded.add(toRegex(exclude));
+		}
+
+		for (String pattern : patterns) {
+			String prefix = pattern.substring(0, 
+					pattern.lastIndexOf('/', firstWildcard(pattern)) + 1);
+			Pattern include = toRegex(pattern.substring(prefix.length()));
+			File base = resolve(prefix, itestWorkspace, workspace);
+			if (!base.isDirectory()) {
+				continue;
+			}
+
+			for (String relative : index.walk(base)) {
+				if (include.matcher(relative).matches() 
+						&& !isExcluded(excluded, prefix, relative) 
+						&& hasTag(index, new File(base, relative))) {
+					found.add(prefix + relative);
+				}
+			}
+		}
+
+		Result result = new Result();
+		result.testCases.addAll(found);
+		result.directoriesReused = index.getReused();
+		result.directoriesListed = index.getListed();
+		index.save(indexFile);
+		return result;
+	}
+
+	private static boolean isExcluded(List<Pattern> excluded, String prefix, 
+			String relative) {
+		for (Pattern exclude : excluded) {
+			//excludes may be given relative to the pattern or in full 
+			if (exclude.matcher(relative).matches() 
+					|| exclude.matcher(prefix + relative).matches()) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private boolean hasTag(TestCaseIndex index, File testCase) 
+			throws IOException {
+		if (tags.isEmpty()) {
+			return true;
+		}
+		Set<String> declared = index.tagsOf(testCase);
+		for (String tag : tags) {
+			if (declared.contains(tag)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	/**
+	 * Map a test case, testbed or parameter file entry, or the non-wildcard 
+	 * part of a pattern, to a path on the agent. 
+	 * @param prefix entry as given in the job configuration 
+	 * @param itestWorkspace iTest workspace, blank for the job workspace 
+	 * @param workspace job workspace 
+	 * @return the file or directory 
+	 */
+	static File resolve(String prefix, String itestWorkspace, File workspace) {
+		if (prefix.startsWith(URI_PROJECT)) {
+			//a blank iTest workspace means the job workspace is one 
+			File root = itestWorkspace.isEmpty() 
+					? workspace : new File(itestWorkspace);
+			return new File(root, prefix.substring(URI_PROJECT.length()));
+		}
+		if (prefix.startsWith(VAR_WORKSPACE)) {
+			return new File(workspace, 
+					prefix.substring(VAR_WORKSPACE.length()));
+		}
+		String path = prefix;
+		if (path.startsWith(URI_FILE)) {
+			path = path.substring(URI_FILE.length());
+			while (path.startsWith("//")) {
+				path = path.substring(1);
+			}
+			//file:/C:/tests on Windows 
+			if (path.length() > 2 && path.charAt(2) == ':') {
+				path = path.substring(1);
+			}
+		}
+		return new File(path);
+	}
+
+	private static int firstWildcard(String pattern) {
+		int star = pattern.indexOf('*');
+		int question = pattern.indexOf('?');
+		if (star < 0) {
+			return question;
+		}
+		return question < 0 ? star : Math.min(star, question);
+	}
+
+	/**
+	 * Translate an Ant style glob into a regular expression. {@code **} 
+	 * matches any number of directories, {@code *} and {@code ?} match 
+	 * within one path segment. 
+	 * @param glob
+	 * @return the compiled expression 
+	 */
+	static Pattern toRegex(String glob) {
+		StringBuilder regex = new StringBuilder();
+		for (int i = 0; i < glob.length(); i++) {
+			char c = glob.charAt(i);
+			if (c == '*') {
+				if (i + 1 < glob.length() && glob.charAt(i + 1) == '*') {
+					if (i + 2 < glob.length() && glob.charAt(i + 2) == '/') {
+						regex.append("(?:.*/)?");
+						i += 2;
+					} else {
+						regex.append(".*");
+						i++;
+					}
+				} else {
+					regex.append("[^/]*");
+				}
+			} else if (c == '?') {
+				regex.append("[^/]");
+			} else {
+				regex.append(Pattern.quote(String.valueOf(c)));
+			}
+		}
+		return Pattern.compile(regex.toString());
+	}
+
+	/**
+	 * Test cases found on the agent, with index statistics for the log. 
+	 */
+	public static final class Result implements Serializable {
+		private static final long serialVersionUID = 1L;
+		private final List<String> testCases = new ArrayList<String>();
+		private int directoriesReused;
+		private int directoriesListed;
+
+		/**
+		 * @return matching test cases, in the same URI form as the pattern 
+		 */
+		public List<String> getTestCases() {
+			return Collections.unmodifiableList(testCases);
+		}
+
+		public int getDirectoriesReused() {
+			return directoriesReused;
+		}
+
+		public int getDirectoriesListed() {
+			return directoriesListed;
+		}
+	}
+}
@@ -0,0 +1,149 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import hudson.remoting.VirtualChannel;
+import jenkins.MasterToSlaveFileCallable;
+
+/**
+ * Computes a content hash of each test case together with the inputs it 
+ * runs with: the testbed, the parameter file and the parameter string. Two 
+ * runs of a test case with the same fingerprint execute identical inputs. 
+ * A test case whose file or shared inputs cannot be found has no 
+ * fingerprint, as its inputs cannot be compared. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class TestCaseFingerprint 
+	extends MasterToSlaveFileCallable<Map<String, String>> {
+
+	private static final long serialVersionUID = 1L;
+
+	private static final String DIGEST = "SHA-1";
+	private static final byte[] MISSING = "<missing>".getBytes();
+
+	private final String itestWorkspace;
+	private final List<String> testCases;
+	private final List<String> sharedInputs;
+	private final String params;
+
+	/**
+	 * @param itestWorkspace iTest workspace containing the projects 
+	 * @param testCases test case entries as given in the job configuration 
+	 * @param sharedInputs testbed and parameter file entries, may be empty 
+	 * @param params parameter string passed with --param 
+	 */
+	public TestCaseFingerprint(String itestWorkspace, List<String> testCases, 
+			List<String> sharedInputs, String params) {
+		this.itestWorkspace = itestWorkspace;
+		this.testCases = new ArrayList<String>(testCases);
+		this.sharedInputs = new ArrayList<String>(sharedInputs);
+		this.params = params;
+	}
+
+	/**
+	 * @return hex encoded fingerprint of each test case entry whose inputs 
+	 * were all found 
+	 */
+	public Map<String, String> invoke(File workspace, VirtualChannel channel) 
+			throws IOException, InterruptedException {
+		Map<String, String> fingerprints = new LinkedHashMap<String, String>();
+		MessageDigest shared = newDigest();
+		for (String input : sharedInputs) {
+			shared.update(input.getBytes("UTF-8"));
+			if (!update(shared, TestCaseDiscovery.resolve(input, 
+					itestWorkspace, workspace))) {
+				return fingerprints;
+			}
+		}
+		shared.update(String.valueOf(params).getBytes("UTF-8"));
+		byte[] sharedDigest = shared.digest();
+
+		for (String testCase : testCases) {
+			MessageDigest digest = newDigest();
+			digest.update(testCase.getBytes("UTF-8"));
+			if (!update(digest, TestCaseDiscovery.resolve(testCase, 
+					itestWorkspace, workspace))) {
+				continue;
+			}
+			digest.update(sharedDigest);
+			fingerprints.put(testCase, toHex(digest.digest()));
+		}
+		return fingerprints;
+	}
+
+	/**
+	 * Add the content of a file to a digest, or a marker if there is no 
+	 * such file. 
+	 * @return true if the file exists 
+	 */
+	static boolean update(MessageDigest digest, File file) 
+			throws IOException {
+		if (!file.isFile()) {
+			digest.update(MISSING);
+			return false;
+		}
+		InputStream in = new FileInputStream(file);
+		try {
+			byte[] buffer = new byte[8192];
+			int n;
+			while ((n = in.read(buffer)) > 0) {
+				digest.update(buffer, 0, n);
+			}
+		} finally {
+			in.close();
+		}
+		return true;
+	}
+
+	static MessageDigest newDigest() throws IOException {
+		try {
+			return MessageDigest.getInstance(DIGEST);
+		} catch (NoSuchAlgorithmException e) {
+			throw new IOException(e.getMessage());
+		}
+	}
+
+	static String toHex(byte[] bytes) {
+		StringBuilder hex = new StringBuilder();
+		for (byte b : bytes) {
+			hex.append(String.format("%02x", b & 0xff));
+		}
+		return hex.toString();
+	}
+}
@@ -0,0 +1,310 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * On-disk index of the files below the directories searched for test cases. 
+ * A directory is only listed again when its modification time changes, 
+ * which happens whenever an entry is added, removed or renamed in it, so 
+ * repeated builds only stat directories instead of listing every file. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class TestCaseIndex implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Directories modified this close to the time they were listed may 
+	 * change again without a visible change of modification time on file 
+	 * systems with coarse timestamps, so they are not trusted. 
+	 */
+	private static final long TIMESTAMP_RESOLUTION = 2000;
+
+	private static final Pattern TAG = 
+			Pattern.compile("<tags?>([^<]*)</tags?>");
+
+	private Map<String, DirectoryEntry> directories = 
+			new HashMap<String, DirectoryEntry>();
+	private Map<String, FileEntry> files = new HashMap<String, FileEntry>();
+
+	private transient int reused;
+	private transient int listed;
+
+	/**
+	 * Read the index, or start an empty one if it is missing or unreadable. 
+	 * @param file
+	 * @return the index 
+	 */
+	static TestCaseIndex load(File file) {
+		if (file.isFile()) {
+			ObjectInputStream in = null;
+			try {
+				in = new ObjectInputStream(new BufferedInputStream(
+						new FileInputStream(file)));
+				return (TestCaseIndex) in.readObject();
+			} catch (Exception e) {
+				//stale or corrupt index, rebuild it 
+			} finally {
+				if (in != null) {
+					try {
+						in.close();
+					} catch (IOException e) {
+						e.printStackTrace();
+					}
+				}
+			}
+		}
+		return new TestCaseIndex();
+	}
+
+	/**
+	 * Write the index to a temporary file of its own next to its final 
+	 * location and move it into place, so concurrent steps sharing the 
+	 * workspace never read a partly written index. The last one to save 
+	 * wins. 
+	 * @param file
+	 * @throws IOException
+	 */
+	void save(File file) throws IOException {
+		File temp = File.createTempFile(file.getName(), ".tmp", 
+				file.getAbsoluteFile().getParentFile());
+		boolean written = false;
+		ObjectOutputStream out = null;
+		try {
+			out = new ObjectOutputStream(
+					new BufferedOutputStream(new FileOutputStream(temp)));
+			out.writeObject(this);
+			written = true;
+		} finally {
+			if (out != null) {
+				out.close();
+			}
+			if (!written) {
+				temp.delete();
+			}
+		}
+		if (!temp.renameTo(file)) {
+			file.delete();
+			if (!temp.renameTo(file)) {
+				temp.delete();
+				throw new IOException("Cannot replace " + file);
+			}
+		}
+	}
+
+	/**
+	 * List all files below a directory, using cached listings for unchanged 
+	 * directories. Entries of directories and files below base that no 
+	 * longer exist are dropped from the index. A symbolic link to a 
+	 * directory the walk is already in is not followed. 
+	 * @param base
+	 * @return paths relative to base, using forward slashes, sorted 
+	 */
+	List<String> walk(File base) {
+		String root = base.getAbsolutePath();
+		Map<String, DirectoryEntry> visited = 
+				new HashMap<String, DirectoryEntry>();
+		List<String> result = new ArrayList<String>();
+		walk(base, "", new HashSet<String>(), visited, result);
+
+		//forget directories and files below base that were not seen 
+		Set<String> stale = new HashSet<String>();
+		for (String dir : directories.keySet()) {
+			if (isBelow(dir, root) && !visited.containsKey(dir)) {
+				stale.add(dir);
+			}
+		}
+		directories.keySet().removeAll(stale);
+		directories.putAll(visited);
+		Set<String> seen = new HashSet<String>();
+		for (String relative : result) {
+			seen.add(new File(base, relative).getAbsolutePath());
+		}
+		stale.clear();
+		for (String file : files.keySet()) {
+			if (isBelow(file, root) && !seen.contains(file)) {
+				stale.add(file);
+			}
+		}
+		files.keySet().removeAll(stale);
+
+		Collections.sort(result);
+		return result;
+	}
+
+	private void walk(File dir, String relative, Set<String> ancestors, 
+			Map<String, DirectoryEntry> visited, List<String> result) {
+		String canonical;
+		try {
+			canonical = dir.getCanonicalPath();
+		} catch (IOException e) {
+			return;
+		}
+		if (!ancestors.add(canonical)) {
+			//symbolic link cycle 
+			return;
+		}
+		String key = dir.getAbsolutePath();
+		long lastModified = dir.lastModified();
+		DirectoryEntry entry = directories.get(key);
+		if (entry == null || entry.lastModified != lastModified 
+				|| lastModified + TIMESTAMP_RESOLUTION >= entry.listedAt) {
+			entry = list(dir, lastModified);
+			listed++;
+		} else {
+			reused++;
+		}
+		visited.put(key, entry);
+
+		for (String name : entry.files) {
+			result.add(relative + name);
+		}
+		for (String name : entry.subdirectories) {
+			walk(new File(dir, name), relative + name + "/", ancestors, 
+					visited, result);
+		}
+		ancestors.remove(canonical);
+	}
+
+	private static DirectoryEntry list(File dir, long lastModified) {
+		DirectoryEntry entry = new DirectoryEntry();
+		entry.lastModified = lastModified;
+		entry.listedAt = System.currentTimeMillis();
+		File[] children = dir.listFiles();
+		if (children != null) {
+			for (File child : children) {
+				if (child.isDirectory()) {
+					entry.subdirectories.add(child.getName());
+				} else {
+					entry.files.add(child.getName());
+				}
+			}
+		}
+		return entry;
+	}
+
+	/**
+	 * Tags declared in a test case file as {@code <tag>name</tag>} or 
+	 * {@code <tags>name1,name2</tags>}, cached until the file changes. 
+	 * @param file
+	 * @return the tags, possibly empty 
+	 * @throws IOException
+	 */
+	Set<String> tagsOf(File file) throws IOException {
+		String key = file.getAbsolutePath();
+		FileEntry entry = files.get(key);
+		if (entry != null && entry.lastModified == file.lastModified() 
+				&& entry.length == file.length()) {
+			return entry.tags;
+		}
+
+		entry = new FileEntry();
+		entry.lastModified = file.lastModified();
+		entry.length = file.length();
+		Matcher m = TAG.matcher(readFile(file));
+		while (m.find()) {
+			for (String tag : m.group(1).split("[,\\s]+")) {
+				if (!tag.isEmpty()) {
+					entry.tags.add(tag);
+				}
+			}
+		}
+		files.put(key, entry);
+		return entry.tags;
+	}
+
+	private static String readFile(File file) throws IOException {
+		byte[] content = new byte[(int) file.length()];
+		FileInputStream in = new FileInputStream(file);
+		try {
+			int read = 0;
+			while (read < content.length) {
+				int n = in.read(content, read, content.length - read);
+				if (n < 0) {
+					break;
+				}
+				read += n;
+			}
+			return new String(content, 0, read, "UTF-8");
+		} finally {
+			in.close();
+		}
+	}
+
+	private static boolean isBelow(String path, String root) {
+		return path.equals(root) || path.startsWith(root + File.separator);
+	}
+
+	/**
+	 * @return directories whose cached listing was used since loading 
+	 */
+	int getReused() {
+		return reused;
+	}
+
+	/**
+	 * @return directories listed from disk since loading 
+	 */
+	int getListed() {
+		return listed;
+	}
+
+	private static final class DirectoryEntry implements Serializable {
+		private static final long serialVersionUID = 1L;
+		long lastModified;
+		long listedAt;
+		final List<String> files = new ArrayList<String>();
+		final List<String> subdirectories = new ArrayList<String>();
+	}
+
+	private static final class FileEntry implements Serializable {
+		private static final long serialVersionUID = 1L;
+		long lastModified;
+		long length;
+		final Set<String> tags = new HashSet<String>();
+	}
+}
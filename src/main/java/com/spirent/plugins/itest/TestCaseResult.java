@@ -0,0 +1,195 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.Serializable;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Outcome of a single test case run by iTestRT. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class TestCaseResult implements Serializable {
+
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Status recorded when iTestRT did not report on the test case. 
+	 */
+	public static final String STATUS_UNKNOWN = "Unknown";
+
+	/**
+	 * Status recorded when the test case exceeded its timeout. 
+	 */
+	public static final String STATUS_TIMED_OUT = "TimedOut";
+
+	/**
+	 * Status recorded when the suite timeout passed before the test case ran. 
+	 */
+	public static final String STATUS_NOT_RUN = "NotRun";
+
+	/**
+	 * Status recorded when iTestRT was killed for exceeding the memory limit 
+	 * while running the test case. 
+	 */
+	public static final String STATUS_MEMORY_EXCEEDED = "MemoryExceeded";
+
+	/**
+	 * Status recorded when a test case it depends on did not pass. 
+	 */
+	public static final String STATUS_SKIPPED = "Skipped";
+
+	/**
+	 * Status recorded when the build was aborted while the test case ran. 
+	 */
+	public static final String STATUS_ABORTED = "Aborted";
+
+	private final String testCase;
+	private final String combination;
+	private final String status;
+	private final long duration;
+	private final int cachedFrom;
+	private int attempts = 1;
+	private boolean flaky;
+
+	/**
+	 * @param testCase test case URI as passed to iTestRT 
+	 * @param combination parameter sweep label, empty if not swept 
+	 * @param status execution status reported by iTestRT 
+	 * @param duration milliseconds spent on the test case 
+	 */
+	public TestCaseResult(String testCase, String combination, String status, 
+			long duration) {
+		this(testCase, combination, status, duration, 0);
+	}
+
+	/**
+	 * @param testCase test case URI as passed to iTestRT 
+	 * @param combination parameter sweep label, empty if not swept 
+	 * @param status execution status reported by iTestRT 
+	 * @param duration milliseconds spent on the test case 
+	 * @param cachedFrom number of the build whose result is reused, 0 if the 
+	 * test case ran in this build 
+	 */
+	public TestCaseResult(String testCase, String combination, String status, 
+			long duration, int cachedFrom) {
+		this.testCase = testCase;
+		this.combination = combination;
+		this.status = status;
+		this.duration = duration;
+		this.cachedFrom = cachedFrom;
+	}
+
+	public String getTestCase() {
+		return testCase;
+	}
+
+	/**
+	 * @return the test case file name without path or extension 
+	 */
+	public String getName() {
+		int start = testCase.lastIndexOf('/') + 1;
+		int end = testCase.lastIndexOf('.');
+		return end > start ? testCase.substring(start, end) 
+				: testCase.substring(start);
+	}
+
+	public String getCombination() {
+		return combination;
+	}
+
+	public String getStatus() {
+		return status;
+	}
+
+	public long getDuration() {
+		return duration;
+	}
+
+	/**
+	 * @return number of the build that actually ran the test case, 0 if it 
+	 * ran in this build 
+	 */
+	public int getCachedFrom() {
+		return cachedFrom;
+	}
+
+	/**
+	 * @return true if the test case was skipped and its earlier result reused 
+	 */
+	public boolean isCached() {
+		return cachedFrom > 0;
+	}
+
+	/**
+	 * @return number of times the test case ran in this build 
+	 */
+	public int getAttempts() {
+		return attempts > 0 ? attempts : 1;
+	}
+
+	/**
+	 * @return true if the test case failed but passed when run again 
+	 */
+	public boolean isFlaky() {
+		return flaky;
+	}
+
+	/**
+	 * @param rerun result of running this test case again 
+	 * @return the outcome after the rerun, flaky if the rerun passed 
+	 */
+	public TestCaseResult withRerun(TestCaseResult rerun) {
+		TestCaseResult result = new TestCaseResult(testCase, combination, 
+				rerun.status, duration + rerun.duration, cachedFrom);
+		result.attempts = getAttempts() + 1;
+		result.flaky = rerun.isPassed();
+		return result;
+	}
+
+	public boolean isPassed() {
+		return status.equalsIgnoreCase("Pass");
+	}
+
+	/**
+	 * @return the result as plain values for Pipeline scripts 
+	 */
+	Map<String, Object> toMap() {
+		Map<String, Object> map = new LinkedHashMap<String, Object>();
+		map.put("testCase", testCase);
+		map.put("name", getName());
+		map.put("combination", combination);
+		map.put("status", status);
+		map.put("duration", duration);
+		map.put("attempts", getAttempts());
+		map.put("flaky", flaky);
+		map.put("cachedFrom", cachedFrom);
+		return map;
+	}
+}
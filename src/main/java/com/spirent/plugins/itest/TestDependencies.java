@@ -0,0 +1,212 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Dependencies declared between test cases, one rule per line: 
+ * {@code <test cases> after <prerequisites>}, both comma separated lists of 
+ * test cases or patterns, e.g. 
+ * {@code project://regression/**}{@code /*.fftc after 
+ * project://setup/provision.fftc}. A test case runs once every test case 
+ * it depends on has passed. A rule {@code <test cases> always after 
+ * <prerequisites>} runs the test cases once the prerequisites have 
+ * finished, whatever their result, e.g. for teardown. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class TestDependencies {
+
+	private static final String AFTER = " after ";
+	private static final String ALWAYS_AFTER = " always after ";
+
+	private final List<Rule> rules = new ArrayList<Rule>();
+
+	/**
+	 * Test cases that run after prerequisites, whatever their result if 
+	 * always is set. 
+	 */
+	private static final class Rule {
+		boolean always;
+		final List<Pattern> dependants = new ArrayList<Pattern>();
+		final List<Pattern> prerequisites = new ArrayList<Pattern>();
+	}
+
+	private TestDependencies() {
+	}
+
+	/**
+	 * @param text rules as entered in the job configuration 
+	 * @param workspace path of the build workspace, for ${WORKSPACE} 
+	 * @return the dependencies 
+	 * @throws IllegalArgumentException if a line is not a rule 
+	 */
+	static TestDependencies parse(String text, String workspace) {
+		TestDependencies dependencies = new TestDependencies();
+		for (String line : text.split("\n")) {
+			line = line.trim();
+			if (line.isEmpty() || line.startsWith("#")) {
+				continue;
+			}
+			Rule rule = new Rule();
+			String separator = ALWAYS_AFTER;
+			int after = line.indexOf(separator);
+			rule.always = after >= 0;
+			if (!rule.always) {
+				separator = AFTER;
+				after = line.indexOf(separator);
+			}
+			if (after < 0) {
+				throw new IllegalArgumentException("Not a test case "
+						+ "dependency, expected <test cases> after "
+						+ "<prerequisites> or <test cases> always after "
+						+ "<prerequisites>: " + line);
+			}
+			patterns(line.substring(0, after), workspace, rule.dependants);
+			patterns(line.substring(after + separator.length()), workspace, 
+					rule.prerequisites);
+			dependencies.rules.add(rule);
+		}
+		return dependencies;
+	}
+
+	private static void patterns(String list, String workspace, 
+			List<Pattern> patterns) {
+		for (String entry : list.split(",")) {
+			String uri = ITest.testCaseUri(entry, workspace);
+			if (uri != null) {
+				patterns.add(TestCaseDiscovery.toRegex(uri));
+			}
+		}
+	}
+
+	boolean isEmpty() {
+		return rules.isEmpty();
+	}
+
+	/**
+	 * @param tests test case URIs of the run 
+	 * @return prerequisites of every test case, among the given test cases 
+	 */
+	Map<String, Set<String>> prerequisites(List<String> tests) {
+		Map<String, Set<String>> graph = edges(tests, false);
+		for (Map.Entry<String, Set<String>> e : edges(tests, true).entrySet()) {
+			graph.get(e.getKey()).addAll(e.getValue());
+		}
+		return graph;
+	}
+
+	/**
+	 * @param tests test case URIs of the run 
+	 * @return prerequisites every test case waits for whatever their 
+	 * result, only declared by always after rules 
+	 */
+	Map<String, Set<String>> unconditional(List<String> tests) {
+		Map<String, Set<String>> graph = edges(tests, true);
+		for (Map.Entry<String, Set<String>> e : edges(tests, false).entrySet()) {
+			graph.get(e.getKey()).removeAll(e.getValue());
+		}
+		return graph;
+	}
+
+	private Map<String, Set<String>> edges(List<String> tests, 
+			boolean always) {
+		Map<String, Set<String>> graph = 
+				new LinkedHashMap<String, Set<String>>();
+		for (String test : tests) {
+			graph.put(test, new LinkedHashSet<String>());
+		}
+		for (Rule rule : rules) {
+			if (rule.always != always) {
+				continue;
+			}
+			List<String> dependants = matching(rule.dependants, tests);
+			if (dependants.isEmpty()) {
+				continue;
+			}
+			List<String> prerequisites = matching(rule.prerequisites, tests);
+			for (String dependant : dependants) {
+				for (String prerequisite : prerequisites) {
+					if (!prerequisite.equals(dependant)) {
+						graph.get(dependant).add(prerequisite);
+					}
+				}
+			}
+		}
+		return graph;
+	}
+
+	private static List<String> matching(List<Pattern> patterns, 
+			List<String> tests) {
+		List<String> matches = new ArrayList<String>();
+		for (String test : tests) {
+			for (Pattern pattern : patterns) {
+				if (pattern.matcher(test).matches()) {
+					matches.add(test);
+					break;
+				}
+			}
+		}
+		return matches;
+	}
+
+	/**
+	 * @param graph prerequisites of every test case 
+	 * @return test cases that depend on themselves through others, empty if 
+	 * the dependencies have no cycle 
+	 */
+	static Set<String> cycle(Map<String, Set<String>> graph) {
+		Map<String, Integer> waiting = new LinkedHashMap<String, Integer>();
+		for (Map.Entry<String, Set<String>> e : graph.entrySet()) {
+			waiting.put(e.getKey(), e.getValue().size());
+		}
+		boolean removed = true;
+		while (removed) {
+			removed = false;
+			for (String test : new ArrayList<String>(waiting.keySet())) {
+				if (waiting.get(test) > 0) {
+					continue;
+				}
+				waiting.remove(test);
+				removed = true;
+				for (Map.Entry<String, Integer> e : waiting.entrySet()) {
+					if (graph.get(e.getKey()).contains(test)) {
+						e.setValue(e.getValue() - 1);
+					}
+				}
+			}
+		}
+		return waiting.keySet();
+	}
+}
@@ -0,0 +1,284 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import hudson.Util;
+import hudson.util.DaemonThreadFactory;
+import hudson.util.NamingThreadFactory;
+
+/**
+ * Pass rate and flakiness of test cases over the last days, read from the 
+ * results uploaded to the test report database. Counts are aggregated per 
+ * job by the database and the latest statuses read newest first, and both 
+ * are kept in a small expiring cache on the controller, so result pages do 
+ * not query the database on every view. Pages never wait for the database: 
+ * an expired or missing history is loaded in the background, once per job 
+ * however many pages ask for it, and pages show the last loaded history 
+ * meanwhile. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class TestHistory {
+
+	private static final Logger LOGGER = 
+			Logger.getLogger(TestHistory.class.getName());
+
+	static final int DAYS = 30;
+	private static final int RECENT = 20;
+	private static final int MAX_JOBS = 64;
+	private static final int MAX_ROWS = 50000;
+	private static final long TTL = TimeUnit.MINUTES.toMillis(10);
+	private static final long FAILURE_TTL = TimeUnit.MINUTES.toMillis(1);
+
+	/**
+	 * History of one test case in one parameter combination. 
+	 */
+	public static final class Entry {
+		private int runs;
+		private int passed;
+		private int flaky;
+		private final List<String> recent = new ArrayList<String>();
+
+		/**
+		 * Add the status of a run older than the recent ones so far. 
+		 * @return false if the entry already has enough recent statuses 
+		 */
+		private boolean addOlder(String status) {
+			if (recent.size() >= RECENT) {
+				return false;
+			}
+			recent.add(0, status);
+			return true;
+		}
+
+		public int getRuns() {
+			return runs;
+		}
+
+		public int getPassed() {
+			return passed;
+		}
+
+		public int getFailed() {
+			return runs - passed;
+		}
+
+		public int getFlaky() {
+			return flaky;
+		}
+
+		/**
+		 * @return percentage of runs that passed 
+		 */
+		public int getPassRate() {
+			return runs == 0 ? 0 : passed * 100 / runs;
+		}
+
+		/**
+		 * @return statuses of the latest runs, oldest first 
+		 */
+		public List<String> getRecent() {
+			return Collections.unmodifiableList(recent);
+		}
+	}
+
+	private static final class Cached {
+		final Map<String, Entry> entries;
+		final long expires;
+
+		Cached(Map<String, Entry> entries, long ttl) {
+			this.entries = entries;
+			this.expires = System.currentTimeMillis() + ttl;
+		}
+	}
+
+	/**
+	 * Job name to history, least recently used first. 
+	 */
+	private static final Map<String, Cached> CACHE = 
+			new LinkedHashMap<String, Cached>(16, 0.75f, true) {
+		private static final long serialVersionUID = 1L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<String, Cached> eldest) {
+			return size() > MAX_JOBS;
+		}
+	};
+
+	/**
+	 * Jobs whose history is being loaded. Guarded by {@link #CACHE}. 
+	 */
+	private static final Set<String> LOADING = new HashSet<String>();
+
+	private static final ExecutorService LOADER = 
+			Executors.newSingleThreadExecutor(new NamingThreadFactory(
+					new DaemonThreadFactory(), "iTest history loader"));
+
+	private TestHistory() {
+	}
+
+	/**
+	 * @return key of a test case in the map returned by {@link #forJob} 
+	 */
+	static String key(String combination, String testCase) {
+		return Util.fixNull(combination) + "\t" + testCase;
+	}
+
+	/**
+	 * History of the test cases of a job, as last loaded. Starts loading it 
+	 * if it expired or was never loaded. 
+	 * @param job full name of the job 
+	 * @return entries by {@link #key}, empty if no history is available or 
+	 * it has not been loaded yet 
+	 */
+	static Map<String, Entry> forJob(final String job) {
+		synchronized (CACHE) {
+			Cached cached = CACHE.get(job);
+			if ((cached == null || cached.expires <= System.currentTimeMillis()) 
+					&& LOADING.add(job)) {
+				LOADER.execute(new Runnable() {
+					public void run() {
+						load(job);
+					}
+				});
+			}
+			return cached == null 
+					? Collections.<String, Entry>emptyMap() : cached.entries;
+		}
+	}
+
+	private static void load(String job) {
+		Map<String, Entry> entries = Collections.emptyMap();
+		long ttl = FAILURE_TTL;
+		try {
+			entries = query(job);
+			ttl = TTL;
+		} catch (SQLException e) {
+			//do not retry a broken database on every page view 
+			LOGGER.log(Level.WARNING, "Cannot read iTest history of " + job, e);
+		} finally {
+			synchronized (CACHE) {
+				CACHE.put(job, new Cached(entries, ttl));
+				LOADING.remove(job);
+			}
+		}
+	}
+
+	/**
+	 * Expire cached history of a job, e.g. after new results were uploaded. 
+	 * It is shown until the history has been loaded again. 
+	 * @param job full name of the job 
+	 */
+	static void invalidate(String job) {
+		synchronized (CACHE) {
+			Cached cached = CACHE.get(job);
+			if (cached != null) {
+				CACHE.put(job, new Cached(cached.entries, 0));
+			}
+		}
+	}
+
+	private static Map<String, Entry> query(String job) throws SQLException {
+		GlobalConfig global = GlobalConfig.get();
+		if (!global.isUploadResults() || !global.isDatabaseConfigured()) {
+			return Collections.emptyMap();
+		}
+		Map<String, Entry> entries = new HashMap<String, Entry>();
+		Timestamp since = new Timestamp(System.currentTimeMillis() 
+				- TimeUnit.DAYS.toMillis(DAYS));
+		Connection connection = global.openConnection();
+		try {
+			PreparedStatement counts = connection.prepareStatement(
+					"SELECT combination, test_case, COUNT(*), "
+					+ "SUM(CASE WHEN UPPER(status) = 'PASS' THEN 1 ELSE 0 END), "
+					+ "SUM(flaky) FROM " + ResultUploader.TABLE 
+					+ " WHERE job_name = ? AND recorded_at >= ? "
+					+ "AND cached_from = 0 GROUP BY combination, test_case");
+			try {
+				counts.setString(1, job);
+				counts.setTimestamp(2, since);
+				ResultSet rs = counts.executeQuery();
+				while (rs.next()) {
+					Entry entry = new Entry();
+					entry.runs = rs.getInt(3);
+					entry.passed = rs.getInt(4);
+					entry.flaky = rs.getInt(5);
+					entries.put(key(rs.getString(1), rs.getString(2)), entry);
+				}
+			} finally {
+				counts.close();
+			}
+
+			//newest first, so the row limit only drops old statuses 
+			PreparedStatement recent = connection.prepareStatement(
+					"SELECT combination, test_case, status FROM " 
+					+ ResultUploader.TABLE + " WHERE job_name = ? AND "
+					+ "recorded_at >= ? AND cached_from = 0 "
+					+ "ORDER BY recorded_at DESC, build_number DESC");
+			try {
+				recent.setMaxRows(MAX_ROWS);
+				recent.setString(1, job);
+				recent.setTimestamp(2, since);
+				ResultSet rs = recent.executeQuery();
+				int complete = 0;
+				while (complete < entries.size() && rs.next()) {
+					Entry entry = entries.get(key(rs.getString(1), 
+							rs.getString(2)));
+					if (entry != null && entry.addOlder(rs.getString(3)) 
+							&& entry.recent.size() == Math.min(RECENT, 
+									entry.runs)) {
+						complete++;
+					}
+				}
+			} finally {
+				recent.close();
+			}
+		} finally {
+			connection.close();
+		}
+		return entries;
+	}
+}
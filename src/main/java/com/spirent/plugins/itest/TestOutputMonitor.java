@@ -0,0 +1,328 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import hudson.console.LineTransformationOutputStream;
+
+/**
+ * Watches iTestRT output line by line, recording the execution status of 
+ * each test case as it is reported, and forwards the output to the build 
+ * log. Test cases run in the order they are passed to iTestRT, so the n-th 
+ * status belongs to the n-th test case. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class TestOutputMonitor extends LineTransformationOutputStream {
+
+	private static final Charset UTF8 = Charset.forName("UTF-8");
+	private static final Pattern EXECUTION_STATUS = 
+			Pattern.compile(ITest.PATTERN_EXECUTION);
+
+	private final OutputStream out;
+	private final byte[] prefix;
+	private final List<String> statuses = new ArrayList<String>();
+	private final List<Long> durations = new ArrayList<Long>();
+	private long lastStatusTime = System.currentTimeMillis();
+	private boolean errorReported;
+	private final Set<Integer> errorIndexes = new TreeSet<Integer>();
+	private Checkpoint checkpoint;
+	private String combination;
+	private List<String> tests;
+	private ITestProgressAction progress;
+	private ReportStreamer reports;
+	private SideLogs sideLogs;
+	private ITestResourceAction resources;
+	private OutputStream sideLog;
+	private String sideLogTest;
+	private String generalLog;
+
+	/**
+	 * @param out stream receiving the output, usually the build log 
+	 * @param prefix text written in front of every forwarded line, may be 
+	 * empty 
+	 */
+	public TestOutputMonitor(OutputStream out, String prefix) {
+		this.out = out;
+		this.prefix = prefix.getBytes(UTF8);
+	}
+
+	/**
+	 * Record each test case in a checkpoint as soon as its status is 
+	 * reported. 
+	 * @param checkpoint
+	 * @param combination label of the parameter combination being run 
+	 * @param tests test cases passed to iTestRT, in order 
+	 */
+	synchronized void setCheckpoint(Checkpoint checkpoint, 
+			String combination, List<String> tests) {
+		this.checkpoint = checkpoint;
+		this.combination = combination;
+		this.tests = tests;
+	}
+
+	/**
+	 * Report each test case to the live progress page as it starts and 
+	 * completes. Requires {@link #setCheckpoint} for the test cases. 
+	 * @param progress
+	 */
+	synchronized void setProgress(ITestProgressAction progress) {
+		this.progress = progress;
+	}
+
+	/**
+	 * Publish the report of each test case as soon as it completes. 
+	 * Requires {@link #setCheckpoint} for the test cases. 
+	 * @param reports
+	 */
+	synchronized void setReportStreamer(ReportStreamer reports) {
+		this.reports = reports;
+	}
+
+	/**
+	 * Write the full output of each test case to its side log and only 
+	 * summary lines, the test case started, execution statuses and errors, 
+	 * to the output stream. Requires {@link #setCheckpoint} for the test 
+	 * cases. 
+	 * @param sideLogs
+	 */
+	synchronized void setSideLogs(SideLogs sideLogs) {
+		this.sideLogs = sideLogs;
+	}
+
+	/**
+	 * Mark each completed test case on the resource chart. 
+	 * @param resources resource samples of the run, may be null 
+	 */
+	synchronized void setResources(ITestResourceAction resources) {
+		this.resources = resources;
+	}
+
+	@Override
+	protected void eol(byte[] b, int len) throws IOException {
+		String line = new String(b, 0, len, UTF8).trim();
+		ITestMetrics.get().lineScanned();
+		TestCaseResult completed = null;
+		String next = null;
+		boolean summary;
+		String started = null;
+		synchronized (this) {
+			summary = ITest.isFailureMessage(line);
+			int running = statuses.size();
+			if (summary) {
+				errorReported = true;
+				errorIndexes.add(running);
+			}
+			Matcher m = EXECUTION_STATUS.matcher(line);
+			boolean status = m.find();
+			if (sideLogs != null) {
+				started = writeSideLog(running, b, len, status);
+			}
+			if (status) {
+				summary = true;
+				long now = System.currentTimeMillis();
+				statuses.add(m.group(1));
+				durations.add(now - lastStatusTime);
+				lastStatusTime = now;
+				int index = statuses.size() - 1;
+				if (tests != null && index < tests.size()) {
+					completed = new TestCaseResult(tests.get(index), 
+							combination, m.group(1), durations.get(index));
+					next = index + 1 < tests.size() ? tests.get(index + 1) : null;
+				}
+			}
+			summary |= sideLogs == null;
+		}
+		if (completed != null && checkpoint != null) {
+			try {
+				checkpoint.record(completed);
+			} catch (IOException e) {
+				e.printStackTrace();
+			}
+		}
+		if (completed != null && progress != null) {
+			progress.finished(combination, completed.getTestCase(), 
+					completed.getStatus(), completed.getDuration());
+			if (next != null) {
+				progress.started(combination, next);
+			}
+		}
+		if (completed != null && resources != null) {
+			resources.boundary(completed.getTestCase(), completed.getStatus());
+		}
+		if (completed != null && reports != null) {
+			reports.testFinished(combination, completed.getTestCase());
+		}
+
+		if (started != null) {
+			forward(("Running " + started + " (full output in side log)\n")
+					.getBytes(UTF8), -1);
+		}
+		if (summary) {
+			forward(b, len);
+		}
+	}
+
+	/**
+	 * Write a line to the side log of the running test case, switching logs 
+	 * when a new test case starts. Falls back to the build log if the side 
+	 * log cannot be written. 
+	 * @param running index of the running test case 
+	 * @param status true if the line reports the execution status 
+	 * @return test case whose log was opened, or null 
+	 */
+	private String writeSideLog(int running, byte[] b, int len, 
+			boolean status) {
+		boolean general = tests == null || running >= tests.size();
+		if (general && generalLog == null) {
+			generalLog = SideLogs.general();
+		}
+		String test = general ? generalLog : tests.get(running);
+		String opened = null;
+		try {
+			if (!test.equals(sideLogTest)) {
+				closeSideLog();
+				sideLog = sideLogs.open(combination, test);
+				sideLogTest = test;
+				opened = general ? null : test;
+			}
+			sideLog.write(b, 0, len);
+			if (status) {
+				//the next line belongs to the next test case 
+				closeSideLog();
+			}
+		} catch (IOException e) {
+			e.printStackTrace();
+			sideLogs = null;
+		}
+		return opened;
+	}
+
+	private void closeSideLog() throws IOException {
+		if (sideLog != null) {
+			OutputStream log = sideLog;
+			sideLog = null;
+			sideLogTest = null;
+			log.close();
+		}
+	}
+
+	/**
+	 * One write per line so concurrent runs do not interleave mid-line. 
+	 * @param len length of the line, -1 for all of b 
+	 */
+	private void forward(byte[] b, int len) throws IOException {
+		if (len < 0) {
+			len = b.length;
+		}
+		byte[] forwarded = new byte[prefix.length + len];
+		System.arraycopy(prefix, 0, forwarded, 0, prefix.length);
+		System.arraycopy(b, 0, forwarded, prefix.length, len);
+		out.write(forwarded);
+	}
+
+	/**
+	 * Flush any partial line without closing the shared output stream. 
+	 */
+	@Override
+	public void close() throws IOException {
+		forceEol();
+		synchronized (this) {
+			closeSideLog();
+		}
+		out.flush();
+	}
+
+	/**
+	 * @return execution statuses in the order they were reported 
+	 */
+	public synchronized List<String> getStatuses() {
+		return new ArrayList<String>(statuses);
+	}
+
+	/**
+	 * @return milliseconds spent on each reported test case 
+	 */
+	public synchronized List<Long> getDurations() {
+		return new ArrayList<Long>(durations);
+	}
+
+	/**
+	 * @return position of the test case iTestRT is executing, which is the 
+	 * number of test cases reported so far 
+	 */
+	public synchronized int getRunningIndex() {
+		return statuses.size();
+	}
+
+	/**
+	 * @return time the running test case started, in milliseconds 
+	 */
+	public synchronized long getRunningSince() {
+		return lastStatusTime;
+	}
+
+	/**
+	 * @return true if iTestRT printed an error message 
+	 */
+	public synchronized boolean isErrorReported() {
+		return errorReported;
+	}
+
+	/**
+	 * @return positions of the test cases iTestRT was executing when it 
+	 * printed an error message, a position past the last test case for 
+	 * errors printed after every test case was reported 
+	 */
+	public synchronized Set<Integer> getErrorIndexes() {
+		return new TreeSet<Integer>(errorIndexes);
+	}
+
+	/**
+	 * @return true if no error was printed and every reported test passed 
+	 */
+	public synchronized boolean isPassed() {
+		if (errorReported) {
+			return false;
+		}
+		for (String status : statuses) {
+			if (!status.equalsIgnoreCase("Pass")) {
+				return false;
+			}
+		}
+		return true;
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import jenkins.util.Timer;
+
+/**
+ * Stops an iTestRT run when the test case it is executing exceeds the per 
+ * test timeout, or when the suite deadline passes. The watchdog interrupts 
+ * the thread waiting for iTestRT, which kills the iTestRT process tree. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+final class TestWatchdog implements Runnable {
+
+	private static final long CHECK_INTERVAL = 1000;
+
+	private final TestOutputMonitor monitor;
+	private final Thread worker;
+	private final long testTimeout;
+	private final long deadline;
+
+	private ScheduledFuture<?> check;
+	private boolean stopped;
+	private int timedOutIndex = -1;
+	private boolean suiteExpired;
+
+	/**
+	 * @param monitor output monitor of the watched run 
+	 * @param worker thread waiting for iTestRT 
+	 * @param testTimeout milliseconds allowed per test case, 0 for no limit 
+	 * @param deadline time the suite must end, 0 for no limit 
+	 */
+	TestWatchdog(TestOutputMonitor monitor, Thread worker, long testTimeout, 
+			long deadline) {
+		this.monitor = monitor;
+		this.worker = worker;
+		this.testTimeout = testTimeout;
+		this.deadline = deadline;
+	}
+
+	void start() {
+		check = Timer.get().scheduleAtFixedRate(this, CHECK_INTERVAL, 
+				CHECK_INTERVAL, TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * Stop watching. Clears the interrupt of the watchdog if it is still 
+	 * pending because iTestRT ended first. An interrupt pending without a 
+	 * timeout is left for the caller. 
+	 * @return true if a pending interrupt was cleared 
+	 */
+	synchronized boolean stop() {
+		stopped = true;
+		check.cancel(false);
+		return timedOutIndex >= 0 && Thread.interrupted();
+	}
+
+	public synchronized void run() {
+		if (stopped || timedOutIndex >= 0) {
+			return;
+		}
+		long now = System.currentTimeMillis();
+		boolean expired = deadline > 0 && now >= deadline;
+		if (expired || (testTimeout > 0 
+				&& now - monitor.getRunningSince() >= testTimeout)) {
+			suiteExpired = expired;
+			timedOutIndex = monitor.getRunningIndex();
+			worker.interrupt();
+		}
+	}
+
+	/**
+	 * @return position of the test case that timed out, -1 if none did 
+	 */
+	synchronized int getTimedOutIndex() {
+		return timedOutIndex;
+	}
+
+	/**
+	 * @return true if the run was stopped because the suite deadline passed 
+	 */
+	synchronized boolean isSuiteExpired() {
+		return suiteExpired;
+	}
+}
@@ -0,0 +1,181 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.Properties;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * {@link ConnectionPool} against an in-memory H2 database standing in for 
+ * the test report database. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ConnectionPoolTest {
+
+	private static final String URL = "jdbc:h2:mem:itest;DB_CLOSE_DELAY=-1";
+
+	private ConnectionPool pool;
+
+	@Before
+	public void configure() {
+		ConnectionPool.configure(URL, "sa", "");
+		pool = ConnectionPool.get();
+	}
+
+	@After
+	public void close() {
+		ConnectionPool.configure(null, null, null);
+	}
+
+	@Test
+	public void reusesReturnedConnections() throws SQLException {
+		pool.borrow().close();
+		Connection connection = pool.borrow();
+		try {
+			assertEquals(1, pool.getOpen());
+			assertEquals(1, pool.getActive());
+		} finally {
+			connection.close();
+		}
+		assertEquals(1, pool.getIdle());
+	}
+
+	@Test
+	public void refusesUseAfterClose() throws SQLException {
+		Connection connection = pool.borrow();
+		connection.close();
+		assertTrue(connection.isClosed());
+		try {
+			connection.createStatement();
+			fail("returned connection still usable");
+		} catch (SQLException e) {
+			//expected 
+		}
+	}
+
+	@Test
+	public void rollsBackUncommittedWork() throws SQLException {
+		Connection connection = pool.borrow();
+		execute(connection, "CREATE TABLE pending (id INT)");
+		connection.setAutoCommit(false);
+		execute(connection, "INSERT INTO pending VALUES (1)");
+		connection.close();
+
+		connection = pool.borrow();
+		try {
+			assertTrue(connection.getAutoCommit());
+			ResultSet rs = connection.createStatement().executeQuery(
+					"SELECT COUNT(*) FROM pending");
+			rs.next();
+			assertEquals(0, rs.getInt(1));
+			execute(connection, "DROP TABLE pending");
+		} finally {
+			connection.close();
+		}
+	}
+
+	@Test
+	public void replacesConnectionsThatFailValidation() throws SQLException {
+		Connection connection = pool.borrow();
+		pool.borrow().close();
+		//closes every connection to the database, the idle one included 
+		execute(connection, "SHUTDOWN");
+		connection.close();
+
+		connection = pool.borrow();
+		try {
+			assertTrue(ConnectionPool.isValid(connection));
+		} finally {
+			connection.close();
+		}
+		assertTrue(pool.getStatistics(), 
+				pool.getStatistics().contains("invalid=1"));
+		assertEquals(1, pool.getOpen());
+	}
+
+	@Test
+	public void keepsPoolForUnchangedSettings() {
+		ConnectionPool.configure(URL, "sa", "");
+		assertSame(pool, ConnectionPool.get());
+		ConnectionPool.configure(URL, "other", "");
+		assertNotSame(pool, ConnectionPool.get());
+	}
+
+	@Test
+	public void closedPoolRefusesConnections() throws SQLException {
+		Connection borrowed = pool.borrow();
+		ConnectionPool.configure(null, null, null);
+		try {
+			pool.borrow();
+			fail("closed pool handed out a connection");
+		} catch (SQLException e) {
+			//expected 
+		}
+		borrowed.close();
+		assertEquals(0, pool.getOpen());
+	}
+
+	@Test
+	public void setsConnectTimeoutPerDriver() {
+		Properties mysql = ConnectionPool.connectionProperties(
+				"jdbc:mysql://db:3306/itest", "user", "secret");
+		assertEquals("user", mysql.getProperty("user"));
+		assertEquals("secret", mysql.getProperty("password"));
+		assertEquals("10000", mysql.getProperty("connectTimeout"));
+		Properties postgres = ConnectionPool.connectionProperties(
+				"jdbc:postgresql://db:5432/itest", "user", "secret");
+		assertEquals("10", postgres.getProperty("loginTimeout"));
+		assertEquals("10", postgres.getProperty("connectTimeout"));
+		assertFalse(ConnectionPool.connectionProperties(URL, "sa", "")
+				.containsKey("connectTimeout"));
+	}
+
+	private static void execute(Connection connection, String sql) 
+			throws SQLException {
+		Statement statement = connection.createStatement();
+		try {
+			statement.execute(sql);
+		} finally {
+			statement.close();
+		}
+	}
+}
@@ -0,0 +1,123 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.junit.Assume;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+import org.jvnet.hudson.test.JenkinsRule;
+
+import hudson.Functions;
+import hudson.model.FreeStyleBuild;
+import hudson.model.FreeStyleProject;
+import hudson.model.Result;
+import hudson.slaves.EnvironmentVariablesNodeProperty;
+import hudson.tools.ToolProperty;
+
+/**
+ * Runs thousands of simulated test cases end to end through a freestyle 
+ * job, with {@link ItestrtSimulator} as itestrt, and prints the time 
+ * spent in every phase. Skipped unless itest.scale.tests is set to the 
+ * number of test cases, e.g. with the scale profile: 
+ * {@code mvn -P scale test -Dtest=ITestScaleTest}. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ITestScaleTest {
+
+	private static final int TESTS = Integer.getInteger("itest.scale.tests", 0);
+	private static final double FAIL_RATE = 0.05;
+
+	@Rule
+	public JenkinsRule j = new JenkinsRule();
+
+	@Rule
+	public TemporaryFolder tmp = new TemporaryFolder();
+
+	@Test
+	public void runsThousandsOfTestCases() throws Exception {
+		Assume.assumeTrue(TESTS > 0);
+		//the simulator is started through its shell script 
+		Assume.assumeFalse(Functions.isWindows());
+
+		File workspace = tmp.newFolder("workspace");
+		ItestrtSimulator.generate(workspace, TESTS);
+		File home = new File("src/bench").getAbsoluteFile();
+		j.jenkins.getDescriptorByType(ITestInstallation.DescriptorImpl.class)
+				.setInstallations(new ITestInstallation("simulator", 
+						home.getPath(), 
+						Collections.<ToolProperty<?>>emptyList()));
+		EnvironmentVariablesNodeProperty env = 
+				new EnvironmentVariablesNodeProperty();
+		env.getEnvVars().put("ITESTRT_SIM_DURATION", "0");
+		env.getEnvVars().put("ITESTRT_SIM_FAIL_RATE", 
+				String.valueOf(FAIL_RATE));
+		env.getEnvVars().put("ITESTRT_SIM_SEED", "1");
+		env.getEnvVars().put("ITESTRT_SIM_CLASSES", 
+				new File("target/test-classes").getAbsolutePath());
+		j.jenkins.getGlobalNodeProperties().add(env);
+
+		ITest step = new ITest(workspace.getPath(), 
+				"project://scale/**/*.fftc", "", "", "", true, "");
+		step.setInstallation("simulator");
+		FreeStyleProject project = j.createFreeStyleProject();
+		project.getBuildersList().add(step);
+
+		long start = System.nanoTime();
+		FreeStyleBuild build = j.assertBuildStatus(Result.FAILURE, 
+				project.scheduleBuild2(0).get());
+		long elapsed = System.nanoTime() - start;
+
+		ITestResultAction results = build.getAction(ITestResultAction.class);
+		assertEquals(TESTS, results.getResults().size());
+		assertTrue("no simulated failures", results.getFailCount() > 0);
+		assertTrue("every test case failed", results.getPassCount() > 0);
+
+		ITestTimelineAction timeline = 
+				build.getAction(ITestTimelineAction.class);
+		Set<String> phases = new HashSet<String>();
+		System.out.println(String.format("%d test cases in %d ms", TESTS, 
+				elapsed / 1000000));
+		for (ITestTimelineAction.Span span : timeline.getSpans()) {
+			phases.add(span.getName());
+			System.out.println(String.format("%-30s %10.1f ms", 
+					span.getName(), span.getDuration() / 1000.0));
+		}
+		assertTrue(phases.contains("Discover test cases"));
+		assertTrue(phases.contains("Execute test cases"));
+		assertTrue(phases.contains("Publish reports"));
+	}
+}
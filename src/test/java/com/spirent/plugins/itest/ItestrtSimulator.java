@@ -0,0 +1,218 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintStream;
+import java.io.UnsupportedEncodingException;
+import java.io.Writer;
+import java.net.URI;
+import java.net.URISyntaxException;
+import java.net.URLDecoder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Stands in for itestrt to run thousands of test cases without Spirent 
+ * hardware or licenses. Prints the output iTestRT prints for each test case, 
+ * ending with its execution status, and writes a dummy HTML report when 
+ * --report is given. Options without meaning to the simulator are accepted 
+ * and ignored. 
+ * <p>
+ * The simulated test cases are configured through environment variables: 
+ * <ul>
+ * <li>ITESTRT_SIM_DURATION milliseconds each test case runs, default 1000 
+ * <li>ITESTRT_SIM_JITTER milliseconds the duration varies by, default 0 
+ * <li>ITESTRT_SIM_FAIL_RATE share of test cases that fail, default 0 
+ * <li>ITESTRT_SIM_LINES lines of output per test case, default 20 
+ * <li>ITESTRT_SIM_SEED seed of the random failures and durations 
+ * </ul>
+ * {@code --generate <directory> <count>} creates an iTest workspace with a 
+ * project named scale holding count test cases, for the test case pattern 
+ * project://scale/**&#47;*.fftc. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ItestrtSimulator {
+
+	private final PrintStream out;
+	private final long duration = setting("ITESTRT_SIM_DURATION", 1000);
+	private final long jitter = setting("ITESTRT_SIM_JITTER", 0);
+	private final double failRate = 
+			Double.parseDouble(setting("ITESTRT_SIM_FAIL_RATE", "0"));
+	private final long lines = setting("ITESTRT_SIM_LINES", 20);
+	private final Random random = new Random(
+			setting("ITESTRT_SIM_SEED", System.nanoTime()));
+
+	private final List<String> tests = new ArrayList<String>();
+	private final List<String> params = new ArrayList<String>();
+	private String report;
+	private String testbed;
+	private String itar;
+	private String exportItar;
+
+	ItestrtSimulator(PrintStream out) {
+		this.out = out;
+	}
+
+	public static void main(String[] args) throws Exception {
+		if (args.length == 1 && args[0].equals("--version")) {
+			System.out.println("iTestRT simulator 1.1.2");
+			return;
+		}
+		if (args.length == 3 && args[0].equals("--generate")) {
+			generate(new File(args[1]), Integer.parseInt(args[2]));
+			return;
+		}
+		ItestrtSimulator simulator = new ItestrtSimulator(System.out);
+		simulator.parse(args);
+		System.exit(simulator.run());
+	}
+
+	private void parse(String[] args) {
+		for (int i = 0; i < args.length; i++) {
+			String value = i + 1 < args.length ? args[i + 1] : "";
+			if (args[i].equals("--test")) {
+				tests.add(value);
+			} else if (args[i].equals("--param")) {
+				params.add(value);
+			} else if (args[i].equals("--report")) {
+				report = value;
+			} else if (args[i].equals("--testbed")) {
+				testbed = value;
+			} else if (args[i].equals("--itar")) {
+				itar = value;
+			} else if (args[i].equals("--exportItar")) {
+				exportItar = value;
+			} else if (!args[i].startsWith("--")) {
+				continue;
+			}
+			i++;
+		}
+	}
+
+	/**
+	 * @return exit code 
+	 */
+	private int run() throws IOException, InterruptedException {
+		if (exportItar != null) {
+			write(new File(exportItar), "simulated export of " + itar);
+			out.println("Exported " + itar + " to " + exportItar);
+			return 0;
+		}
+		if (tests.isEmpty()) {
+			out.println("Error: no test case to run");
+			return 1;
+		}
+		out.println("iTestRT simulator, testbed " + testbed + ", parameters " 
+				+ params);
+		for (String test : tests) {
+			String uri = decode(test);
+			String name = uri.substring(uri.lastIndexOf('/') + 1);
+			if (name.lastIndexOf('.') > 0) {
+				name = name.substring(0, name.lastIndexOf('.'));
+			}
+			out.println("Executing test case " + uri);
+			long time = Math.max(0, duration + (jitter > 0 
+					? (long) ((random.nextDouble() * 2 - 1) * jitter) : 0));
+			for (long line = 0; line < lines; line++) {
+				out.println("INFO  [" + name + " step " + line 
+						+ "] command sent, response received");
+				Thread.sleep(lines > 0 ? time / lines : 0);
+			}
+			String status = random.nextDouble() < failRate ? "Fail" : "Pass";
+			if (report != null) {
+				writeReport(name, uri, status, time);
+			}
+			out.println("Execution status: " + status);
+		}
+		return 0;
+	}
+
+	private void writeReport(String name, String uri, String status, 
+			long time) throws IOException {
+		File file;
+		try {
+			file = new File(new URI(report.replace("{tcfilename}", 
+					name.replace("%", "%25").replace(" ", "%20"))));
+		} catch (URISyntaxException e) {
+			file = new File(report.replaceFirst("^file:", "")
+					.replace("{tcfilename}", name));
+		} catch (IllegalArgumentException e) {
+			file = new File(report.replaceFirst("^file:", "")
+					.replace("{tcfilename}", name));
+		}
+		write(file, "<html><head><title>" + name + "</title></head><body>"
+				+ "<h1>" + name + "</h1><p>" + uri + "</p><p>Execution status: " 
+				+ status + "</p><p>Duration: " + time + " ms</p></body></html>");
+	}
+
+	/**
+	 * Create an iTest workspace with a project of generated test cases. 
+	 */
+	static void generate(File workspace, int count) 
+			throws IOException {
+		File project = new File(workspace, "scale");
+		write(new File(project, ".project"), "<projectDescription><name>scale"
+				+ "</name></projectDescription>");
+		for (int i = 0; i < count; i++) {
+			write(new File(project, String.format("group_%03d/case_%05d.fftc", 
+					i / 100, i)), "<testCase/>");
+		}
+		System.out.println("Created " + count + " test cases in " + project);
+	}
+
+	private static void write(File file, String content) throws IOException {
+		file.getParentFile().mkdirs();
+		Writer writer = new OutputStreamWriter(new FileOutputStream(file), 
+				"UTF-8");
+		try {
+			writer.write(content);
+		} finally {
+			writer.close();
+		}
+	}
+
+	private static String decode(String test) 
+			throws UnsupportedEncodingException {
+		return URLDecoder.decode(test.replace("+", "%2B"), "UTF-8");
+	}
+
+	private static long setting(String name, long defaultValue) {
+		return Long.parseLong(setting(name, String.valueOf(defaultValue)));
+	}
+
+	private static String setting(String name, String defaultValue) {
+		String value = System.getenv(name);
+		return value == null || value.trim().isEmpty() ? defaultValue 
+				: value.trim();
+	}
+}
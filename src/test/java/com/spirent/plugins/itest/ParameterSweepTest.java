@@ -0,0 +1,115 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.junit.Test;
+
+/**
+ * Expansion of the iTest parameter list by {@link ParameterSweep}. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class ParameterSweepTest {
+
+	@Test
+	public void singleCombinationWithoutSweep() {
+		ParameterSweep sweep = ParameterSweep.parse("a=1, b = 2,flag");
+		assertFalse(sweep.isSweep());
+		ParameterSweep.Combination only = sweep.getCombinations().get(0);
+		assertEquals("", only.getLabel());
+		assertEquals(Arrays.asList("a=1", "b=2", "flag"), only.getParams());
+	}
+
+	@Test
+	public void noParameters() {
+		assertEquals(1, ParameterSweep.parse(null).getCombinations().size());
+		assertEquals(1, ParameterSweep.parse(" , ").getCombinations().size());
+	}
+
+	@Test
+	public void firstParameterVariesSlowest() {
+		ParameterSweep sweep = ParameterSweep.parse(
+				"size=64|128, fixed=x, speed=1G|10G|40G");
+		assertTrue(sweep.isSweep());
+		assertEquals(Arrays.asList("size=64,speed=1G", "size=64,speed=10G", 
+				"size=64,speed=40G", "size=128,speed=1G", "size=128,speed=10G", 
+				"size=128,speed=40G"), labels(sweep));
+		ParameterSweep.Combination last = sweep.getCombinations().get(5);
+		assertEquals(6, last.getIndex());
+		assertEquals(Arrays.asList("fixed=x", "size=128", "speed=40G"), 
+				last.getParams());
+	}
+
+	@Test
+	public void formatsFixedAndSweptPairsAlike() {
+		ParameterSweep sweep = ParameterSweep.parse("a = 1, b = 2 | 3");
+		assertEquals(Arrays.asList("a=1", "b=2"), 
+				sweep.getCombinations().get(0).getParams());
+		assertEquals(Arrays.asList("b=2", "b=3"), labels(sweep));
+	}
+
+	@Test
+	public void skipsBlankValues() {
+		assertEquals(Arrays.asList("a=1", "a=2"), 
+				labels(ParameterSweep.parse("a=1||2|")));
+	}
+
+	@Test
+	public void escapedBarDoesNotSweep() {
+		ParameterSweep sweep = ParameterSweep.parse("filter=a\\|b");
+		assertFalse(sweep.isSweep());
+		assertEquals(Arrays.asList("filter=a|b"), 
+				sweep.getCombinations().get(0).getParams());
+	}
+
+	@Test
+	public void escapedBarInSweptValue() {
+		assertEquals(Arrays.asList("filter=a|b", "filter=c"), 
+				labels(ParameterSweep.parse("filter=a\\|b|c")));
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsSweepWithoutValues() {
+		ParameterSweep.parse("a=1, x=|");
+	}
+
+	private static List<String> labels(ParameterSweep sweep) {
+		List<String> labels = new ArrayList<String>();
+		for (ParameterSweep.Combination c : sweep.getCombinations()) {
+			labels.add(c.getLabel());
+		}
+		return labels;
+	}
+}
@@ -0,0 +1,158 @@
+/*
+ * The MIT License (MIT)
+ * 
+ * Copyright (c) 2014 Spirent Communications, Inc.
+ 
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ 
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ 
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ */
+
+
+package com.spirent.plugins.itest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.junit.Test;
+
+/**
+ * Parsing of {@link TestDependencies} and the graphs built from them. 
+ * 
+ * @author Spirent
+ * @since 1.1.2
+ */
+public class TestDependenciesTest {
+
+	private static final String PROVISION = "project://setup/provision.fftc";
+	private static final String RELEASE = "project://setup/release.fftc";
+	private static final String PING = "project://regression/ping.fftc";
+	private static final String LOAD = "project://regression/load/load.fftc";
+	private static final String OTHER = "project://other/other.fftc";
+
+	private static final List<String> TESTS = 
+			Arrays.asList(PROVISION, PING, LOAD, OTHER, RELEASE);
+
+	@Test
+	public void ignoresCommentsAndBlankLines() {
+		assertTrue(TestDependencies.parse("# setup first\n\n  \n", "/ws")
+				.isEmpty());
+	}
+
+	@Test(expected = IllegalArgumentException.class)
+	public void rejectsLinesWithoutAfter() {
+		TestDependencies.parse(PING + " before " + PROVISION, "/ws");
+	}
+
+	@Test
+	public void matchesPatternsOnBothSides() {
+		Map<String, Set<String>> graph = TestDependencies.parse(
+				"project://regression/**/*.fftc after " + PROVISION, "/ws")
+				.prerequisites(TESTS);
+		assertEquals(set(PROVISION), graph.get(PING));
+		assertEquals(set(PROVISION), graph.get(LOAD));
+		assertEquals(set(), graph.get(PROVISION));
+		assertEquals(set(), graph.get(OTHER));
+		assertEquals(TESTS.size(), graph.size());
+	}
+
+	@Test
+	public void splitsCommaSeparatedLists() {
+		Map<String, Set<String>> graph = TestDependencies.parse(
+				PING + ", " + LOAD + " after " + PROVISION + "," + OTHER, 
+				"/ws").prerequisites(TESTS);
+		assertEquals(set(PROVISION, OTHER), graph.get(PING));
+		assertEquals(set(PROVISION, OTHER), graph.get(LOAD));
+	}
+
+	@Test
+	public void resolvesWorkspaceTestCases() {
+		List<String> tests = Arrays.asList("file://ws/a.fftc", 
+				"file://ws/b.fftc");
+		Map<String, Set<String>> graph = TestDependencies.parse(
+				"${WORKSPACE}/b.fftc after ${WORKSPACE}/a.fftc", "/ws")
+				.prerequisites(tests);
+		assertEquals(set("file://ws/a.fftc"), graph.get("file://ws/b.fftc"));
+	}
+
+	@Test
+	public void ignoresDependenciesOnItself() {
+		Map<String, Set<String>> graph = TestDependencies.parse(
+				"project://regression/*.fftc after project://regression/**", 
+				"/ws").prerequisites(TESTS);
+		assertEquals(set(LOAD), graph.get(PING));
+	}
+
+	@Test
+	public void unconditionalHasOnlyAlwaysAfterRules() {
+		TestDependencies dependencies = TestDependencies.parse(
+				"project://regression/** after " + PROVISION + "\n" 
+				+ RELEASE + " always after project://regression/**", "/ws");
+		assertEquals(set(PROVISION), 
+				dependencies.prerequisites(TESTS).get(PING));
+		assertEquals(set(), dependencies.unconditional(TESTS).get(PING));
+		assertEquals(set(PING, LOAD), 
+				dependencies.prerequisites(TESTS).get(RELEASE));
+		assertEquals(set(PING, LOAD), 
+				dependencies.unconditional(TESTS).get(RELEASE));
+	}
+
+	@Test
+	public void afterRuleOverridesAlwaysAfter() {
+		TestDependencies dependencies = TestDependencies.parse(
+				RELEASE + " always after project://regression/**\n" 
+				+ RELEASE + " after " + PING, "/ws");
+		assertEquals(set(PING, LOAD), 
+				dependencies.prerequisites(TESTS).get(RELEASE));
+		assertEquals(set(LOAD), 
+				dependencies.unconditional(TESTS).get(RELEASE));
+	}
+
+	@Test
+	public void findsNoCycleInAcyclicGraph() {
+		Map<String, Set<String>> graph = TestDependencies.parse(
+				"project://regression/** after " + PROVISION + "\n" 
+				+ RELEASE + " always after project://regression/**", "/ws")
+				.prerequisites(TESTS);
+		assertEquals(set(), TestDependencies.cycle(graph));
+	}
+
+	@Test
+	public void findsCycle() {
+		Map<String, Set<String>> graph = 
+				new LinkedHashMap<String, Set<String>>();
+		graph.put("a", set("c"));
+		graph.put("b", set("a"));
+		graph.put("c", set("b"));
+		graph.put("d", Collections.<String>emptySet());
+		assertEquals(set("a", "b", "c"), 
+				new HashSet<String>(TestDependencies.cycle(graph)));
+	}
+
+	private static Set<String> set(String... tests) {
+		return new LinkedHashSet<String>(Arrays.asList(tests));
+	}
+}